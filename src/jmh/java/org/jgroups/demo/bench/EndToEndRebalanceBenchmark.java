@@ -0,0 +1,86 @@
+package org.jgroups.demo.bench;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.consistenthash.ConsistentHashRebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.roundrobin.RoundRobinRebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.sticky.StickyRebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.weighted.WeightedRebalanceFactory;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full rebalance latency over a loopback stack: leader RPCs, listeners on every node and acks.
+ * Every invocation alternates between all nodes and all but the last one, so payloads move each time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndRebalanceBenchmark {
+
+    @Param({"roundrobin", "sticky", "consistenthash", "weighted"})
+    String strategy;
+
+    @Param({"3", "5"})
+    int nodeCount;
+
+    @Param({"10000"})
+    int payloadCount;
+
+    private LoopbackCluster<Long> cluster;
+    private RemoteNodeMethodDispatcher<Long> dispatcher;
+    private RebalanceFactory<Long> factory;
+    private List<Long> payloads;
+    private List<Address> all;
+    private List<Address> shrunk;
+    private boolean full;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new LoopbackCluster<>("e2e-bench", nodeCount);
+        dispatcher = cluster.dispatcher(60000);
+        factory = switch (strategy) {
+            case "sticky" -> new StickyRebalanceFactory<>();
+            case "consistenthash" -> new ConsistentHashRebalanceFactory<>();
+            case "weighted" -> new WeightedRebalanceFactory<>();
+            default -> new RoundRobinRebalanceFactory<>();
+        };
+        payloads = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            payloads.add(i);
+        }
+        all = cluster.members();
+        shrunk = all.subList(0, all.size() - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public void rebalance() {
+        full = !full;
+        factory.create(payloads, full ? all : shrunk, dispatcher)
+                .run();
+    }
+}
@@ -0,0 +1,100 @@
+package org.jgroups.demo.bench;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.executor.ListenerExecutor;
+import org.jgroups.demo.rpc.node.rpc.AsyncRpcDispatcher;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethods;
+import org.jgroups.protocols.FRAG4;
+import org.jgroups.protocols.MFC;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.protocols.SHARED_LOOPBACK_PING;
+import org.jgroups.protocols.UFC;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * N channels with RpcDispatcher and RemoteNodeMethods in one JVM, no network
+ * @param <P>
+ */
+public class LoopbackCluster<P> implements Closeable {
+
+    private final List<JChannel> channels = new ArrayList<>();
+    private final List<RpcDispatcher> dispatchers = new ArrayList<>();
+    private final List<RemoteNodeMethods<P>> methods = new ArrayList<>();
+    private final List<ListenerExecutor> listenerExecutors = new ArrayList<>();
+    private final PayloadCodec<P> codec;
+
+    public LoopbackCluster(String cluster, int size) throws Exception {
+        this(cluster, size, new ObjectCodec<>());
+    }
+
+    public LoopbackCluster(String cluster, int size, PayloadCodec<P> codec) throws Exception {
+        this.codec = codec;
+        for (int i = 0; i < size; i++) {
+            var channel = channel(String.valueOf((char) ('A' + i)));
+            var listenerExecutor = new ListenerExecutor();
+            var remoteNodeMethods = new RemoteNodeMethods<>(channel, codec, listenerExecutor);
+            var rpcDispatcher = new AsyncRpcDispatcher(channel, remoteNodeMethods);
+            rpcDispatcher.setMethodLookup(RemoteNodeMethods.METHOD_LOOKUP);
+            channel.connect(cluster);
+
+            channels.add(channel);
+            dispatchers.add(rpcDispatcher);
+            methods.add(remoteNodeMethods);
+            listenerExecutors.add(listenerExecutor);
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels.toArray(JChannel[]::new));
+    }
+
+    public static JChannel channel(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(),
+                new SHARED_LOOPBACK_PING(),
+                new NAKACK2(),
+                new UNICAST3(),
+                new STABLE(),
+                new GMS().setJoinTimeout(1000),
+                new UFC(),
+                new MFC(),
+                new FRAG4()
+        ).name(name);
+    }
+
+    public List<Address> members() {
+        return channels.get(0)
+                .getView()
+                .getMembers();
+    }
+
+    public RemoteNodeMethodDispatcher<P> dispatcher(int timeout) {
+        return new RemoteNodeMethodDispatcher<>(dispatchers.get(0), timeout, codec);
+    }
+
+    public RpcDispatcher rpcDispatcher(int index) {
+        return dispatchers.get(index);
+    }
+
+    public List<RemoteNodeMethods<P>> methods() {
+        return methods;
+    }
+
+    @Override
+    public void close() {
+        for (int i = channels.size() - 1; i >= 0; i--) {
+            Util.close(dispatchers.get(i));
+            Util.close(channels.get(i));
+            listenerExecutors.get(i).close();
+        }
+    }
+}
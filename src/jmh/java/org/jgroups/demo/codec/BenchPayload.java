@@ -0,0 +1,44 @@
+package org.jgroups.demo.codec;
+
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Payload of a typical size: an id and a short name
+ */
+public class BenchPayload implements SizeStreamable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long id;
+    private String name;
+
+    public BenchPayload() {
+    }
+
+    public BenchPayload(long id) {
+        this.id = id;
+        this.name = "payload-" + id;
+    }
+
+    @Override
+    public int serializedSize() {
+        return Long.BYTES + Bits.size(name);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(id);
+        Bits.writeString(name, out);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        id = in.readLong();
+        name = Bits.readString(in);
+    }
+}
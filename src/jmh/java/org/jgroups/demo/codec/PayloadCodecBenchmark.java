@@ -0,0 +1,74 @@
+package org.jgroups.demo.codec;
+
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode + decode of a payload list: Java serialization of the whole list (the old state transfer)
+ * against the codecs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadCodecBenchmark {
+
+    @Param({"1000", "100000"})
+    int payloadCount;
+
+    private List<BenchPayload> payloads;
+
+    private final PayloadCodec<BenchPayload> serializable = new SerializableCodec<>();
+    private final PayloadCodec<BenchPayload> object = new ObjectCodec<>();
+    private final PayloadCodec<BenchPayload> streamable = new StreamableCodec<>(BenchPayload::new);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payloads = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            payloads.add(new BenchPayload(i));
+        }
+    }
+
+    @Benchmark
+    public Object serializedList() throws Exception {
+        var out = new ByteArrayDataOutputStream();
+        Util.objectToStream(new LinkedList<>(payloads), out);
+        return Util.objectFromStream(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+    }
+
+    @Benchmark
+    public List<BenchPayload> serializableCodec() throws Exception {
+        return serializable.fromBytes(serializable.toBytes(payloads));
+    }
+
+    @Benchmark
+    public List<BenchPayload> objectCodec() throws Exception {
+        return object.fromBytes(object.toBytes(payloads));
+    }
+
+    @Benchmark
+    public List<BenchPayload> streamableCodec() throws Exception {
+        return streamable.fromBytes(streamable.toBytes(payloads));
+    }
+}
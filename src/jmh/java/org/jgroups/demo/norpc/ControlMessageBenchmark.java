@@ -0,0 +1,161 @@
+package org.jgroups.demo.norpc;
+
+import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.EmptyMessage;
+import org.jgroups.Message;
+import org.jgroups.ObjectMessage;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.UUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * norpc control messages from send to dispatch, without the network:
+ * build the message, write it to the wire format, read it back and dispatch it like Node.receive.
+ * legacy* is the former format, a serialized String per control message and one StartObject per payload,
+ * typed* is the NodeHeader opcode with all payloads of a node in one BytesMessage
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControlMessageBenchmark {
+
+    @Param({"1", "100", "1000"})
+    int payloadCount;
+
+    private final PayloadCodec<Long> codec = new ObjectCodec<>();
+    private final Address node = UUID.randomUUID();
+    private List<Long> payloads;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ClassConfigurator.addIfAbsent(NodeHeader.MAGIC_ID, NodeHeader.class);
+        payloads = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            payloads.add(i);
+        }
+    }
+
+    @Benchmark
+    public int legacyStopAll() throws Exception {
+        return legacyDispatch(roundTrip(new ObjectMessage(node, "stop_all"), new ObjectMessage()));
+    }
+
+    @Benchmark
+    public int typedStopAll() throws Exception {
+        var message = new EmptyMessage(node).putHeader(NodeHeader.ID, new NodeHeader(NodeHeader.Op.STOP_ALL));
+        return typedDispatch(roundTrip(message, new EmptyMessage()));
+    }
+
+    @Benchmark
+    public int legacyStart() throws Exception {
+        int started = 0;
+        for (Long payload : payloads) {
+            var message = new ObjectMessage(node, new StartObject<>(payload, codec));
+            started += legacyDispatch(roundTrip(message, new ObjectMessage()));
+        }
+        return started;
+    }
+
+    @Benchmark
+    public int typedStart() throws Exception {
+        var message = new BytesMessage(node, codec.toBytes(payloads))
+                .putHeader(NodeHeader.ID, new NodeHeader(NodeHeader.Op.START));
+        return typedDispatch(roundTrip(message, new BytesMessage()));
+    }
+
+    private static Message roundTrip(Message message, Message received) throws Exception {
+        var out = new ByteArrayDataOutputStream(message.size());
+        message.writeTo(out);
+        received.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        return received;
+    }
+
+    private int legacyDispatch(Message message) throws IOException {
+        if (message.getObject().equals("stop_all")) {
+            return 0;
+        }
+        if (message.getObject().equals("confirm_all_stopped")) {
+            return 0;
+        }
+        if (message.getObject() instanceof StartObject) {
+            StartObject<Long> object = message.getObject();
+            return object.getPayload(codec) != null ? 1 : 0;
+        }
+        return -1;
+    }
+
+    private int typedDispatch(Message message) throws IOException {
+        NodeHeader header = message.getHeader(NodeHeader.ID);
+        return switch (header.getOp()) {
+            case STOP_ALL, STOP_ALL_CONFIRM -> 0;
+            case START -> codec.readAll(new ByteArrayDataInputStream(message.getArray(),
+                            message.getOffset(),
+                            message.getLength()))
+                    .size();
+        };
+    }
+
+    /**
+     * Start command of the former format, one payload per message
+     */
+    public static class StartObject<P> implements SizeStreamable {
+
+        private byte[] payload;
+
+        public StartObject() {
+        }
+
+        public StartObject(P payload, PayloadCodec<P> codec) throws IOException {
+            this.payload = codec.toBytes(List.of(payload));
+        }
+
+        public P getPayload(PayloadCodec<P> codec) throws IOException {
+            return codec.fromBytes(payload)
+                    .get(0);
+        }
+
+        @Override
+        public int serializedSize() {
+            return Integer.BYTES + payload.length;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+
+        @Override
+        public void readFrom(DataInput in) throws IOException {
+            payload = new byte[in.readInt()];
+            in.readFully(payload);
+        }
+    }
+}
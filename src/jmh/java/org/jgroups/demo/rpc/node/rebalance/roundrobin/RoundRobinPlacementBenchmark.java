@@ -0,0 +1,59 @@
+package org.jgroups.demo.rpc.node.rebalance.roundrobin;
+
+import org.jgroups.Address;
+import org.jgroups.util.UUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placement computation only, no RPC
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundRobinPlacementBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int payloadCount;
+
+    @Param({"3", "16"})
+    int nodeCount;
+
+    private RoundRobinRebalance<Long> rebalance;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Long> payloads = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            payloads.add(i);
+        }
+        List<Address> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(UUID.randomUUID());
+        }
+        rebalance = new RoundRobinRebalance<>(payloads, nodes, null);
+    }
+
+    @Benchmark
+    public Map<Address, List<Long>> assign() {
+        return rebalance.assign();
+    }
+}
@@ -0,0 +1,63 @@
+package org.jgroups.demo.rpc.node.rebalance.roundrobin;
+
+import org.jgroups.demo.bench.LoopbackCluster;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebalance wall time against payload count, 3 nodes over a loopback stack
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RoundRobinRebalanceBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    int payloadCount;
+
+    @Param({"3"})
+    int nodeCount;
+
+    private LoopbackCluster<Long> cluster;
+    private RemoteNodeMethodDispatcher<Long> dispatcher;
+    private List<Long> payloads;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new LoopbackCluster<>("rebalance-bench", nodeCount);
+        dispatcher = cluster.dispatcher(60000);
+        payloads = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            payloads.add(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public void rebalance() {
+        new RoundRobinRebalance<>(payloads, cluster.members(), dispatcher).run();
+    }
+}
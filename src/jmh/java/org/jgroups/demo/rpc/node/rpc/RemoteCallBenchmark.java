@@ -0,0 +1,77 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import org.jgroups.Address;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.demo.bench.LoopbackCluster;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call overhead of one unicast RPC over a loopback stack:
+ * reflective lookup and Method signature on the wire against a method ID,
+ * and the same call through RemoteNodeMethodDispatcher (fan-out, timeouts, decoding)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RemoteCallBenchmark {
+
+    private LoopbackCluster<Long> cluster;
+    private RpcDispatcher rpcDispatcher;
+    private Address target;
+    private RequestOptions options;
+    private byte[] noPayloads;
+    private RemoteNodeMethodDispatcher<Long> dispatcher;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new LoopbackCluster<>("remote-call-bench", 2);
+        rpcDispatcher = cluster.rpcDispatcher(0);
+        target = cluster.members().get(1);
+        options = RequestOptions.SYNC().timeout(10000);
+        noPayloads = new ObjectCodec<Long>().toBytes(List.of());
+        dispatcher = cluster.dispatcher(10000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public Object reflectiveMethod() throws Exception {
+        var method = RemoteNodeMethods.class.getMethod("notifyStopListeners", long.class, byte[].class);
+        var call = new MethodCall(method, 0L, noPayloads);
+        return rpcDispatcher.callRemoteMethod(target, call, options);
+    }
+
+    @Benchmark
+    public Object methodId() throws Exception {
+        var call = new MethodCall(RemoteNodeMethods.NOTIFY_STOP, 0L, noPayloads);
+        return rpcDispatcher.callRemoteMethod(target, call, options);
+    }
+
+    @Benchmark
+    public Object dispatcher() throws Exception {
+        return dispatcher.callRemoteGetRunningPayloads(List.of(target));
+    }
+}
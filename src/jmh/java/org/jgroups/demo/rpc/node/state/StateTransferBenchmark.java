@@ -0,0 +1,76 @@
+package org.jgroups.demo.rpc.node.state;
+
+import org.jgroups.demo.codec.ChunkedPayloadStream;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAFT snapshot write (getState) and install (setState) of the payload state machine, in memory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateTransferBenchmark {
+
+    @Param({"10000", "100000"})
+    int payloadCount;
+
+    @Param({"false", "true"})
+    boolean compress;
+
+    private PayloadStateMachine<Long> source;
+    private PayloadStateMachine<Long> target;
+    private ByteArrayDataOutputStream snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var codec = new ObjectCodec<Long>();
+        source = new PayloadStateMachine<>(codec);
+        target = new PayloadStateMachine<>(codec);
+        source.setStateTransfer(new ChunkedPayloadStream<>(codec, 1024, compress));
+        target.setStateTransfer(new ChunkedPayloadStream<>(codec, 1024, compress));
+
+        List<Change<Long>> changes = new ArrayList<>(payloadCount);
+        for (long i = 0; i < payloadCount; i++) {
+            changes.add(Change.add(i));
+        }
+        var command = source.command(changes);
+        source.apply(command.getArray(), command.getOffset(), command.getLength(), false);
+
+        snapshot = new ByteArrayDataOutputStream(payloadCount * 16);
+        source.writeContentTo(snapshot);
+    }
+
+    @Benchmark
+    public int getState() throws Exception {
+        var out = new ByteArrayDataOutputStream(snapshot.position());
+        source.writeContentTo(out);
+        return out.position();
+    }
+
+    @Benchmark
+    public boolean setState() throws Exception {
+        target.readContentFrom(new ByteArrayDataInputStream(snapshot.buffer(), 0, snapshot.position()));
+        return target.isEmpty();
+    }
+}
@@ -0,0 +1,174 @@
+package org.jgroups.demo.codec;
+
+import lombok.Getter;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming state transfer format: payloads in length-prefixed chunks, optionally deflated.
+ * Both sides hold one chunk in memory at a time, not the whole encoded state.
+ * <pre>
+ * boolean compressed
+ * { int count, int rawLength, int storedLength, byte[storedLength] }*
+ * int 0
+ * </pre>
+ * @param <P>
+ */
+@Getter
+public class ChunkedPayloadStream<P> {
+
+    private final PayloadCodec<P> codec;
+    private final int chunkSize;
+    private final boolean compress;
+
+    public ChunkedPayloadStream(PayloadCodec<P> codec) {
+        this(codec, 1024, false);
+    }
+
+    /**
+     * @param chunkSize Payloads per chunk
+     * @param compress  Deflate every chunk
+     */
+    public ChunkedPayloadStream(PayloadCodec<P> codec, int chunkSize, boolean compress) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.codec = codec;
+        this.chunkSize = chunkSize;
+        this.compress = compress;
+    }
+
+    /**
+     * @return Bytes written
+     */
+    public long write(Iterable<P> payloads, DataOutput out) throws IOException {
+        out.writeBoolean(compress);
+        long bytes = 1 + Integer.BYTES;
+        var buffer = new ByteArrayDataOutputStream(chunkSize * 32);
+        var deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            List<P> chunk = new ArrayList<>(chunkSize);
+            for (P p : payloads) {
+                chunk.add(p);
+                if (chunk.size() == chunkSize) {
+                    bytes += writeChunk(chunk, buffer, deflater, out);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                bytes += writeChunk(chunk, buffer, deflater, out);
+            }
+            out.writeInt(0);
+            return bytes;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private int writeChunk(List<P> chunk,
+                            ByteArrayDataOutputStream buffer,
+                            Deflater deflater,
+                            DataOutput out
+    ) throws IOException {
+        buffer.position(0);
+        codec.writeAll(chunk, buffer);
+        int rawLength = buffer.position();
+
+        out.writeInt(chunk.size());
+        out.writeInt(rawLength);
+        if (deflater == null) {
+            out.writeInt(rawLength);
+            out.write(buffer.buffer(), 0, rawLength);
+            return 3 * Integer.BYTES + rawLength;
+        }
+        deflater.reset();
+        deflater.setInput(buffer.buffer(), 0, rawLength);
+        deflater.finish();
+
+        byte[] deflated = new byte[rawLength / 2 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflated.length) {
+                deflated = Arrays.copyOf(deflated, deflated.length * 2);
+            }
+            length += deflater.deflate(deflated, length, deflated.length - length);
+        }
+        out.writeInt(length);
+        out.write(deflated, 0, length);
+        return 3 * Integer.BYTES + length;
+    }
+
+    /**
+     * @param consumer Receives the payloads chunk by chunk, in stream order
+     * @return Bytes read
+     */
+    public long read(DataInput in, Consumer<List<P>> consumer) throws IOException {
+        boolean compressed = in.readBoolean();
+        long bytes = 1 + Integer.BYTES;
+        var inflater = compressed ? new Inflater() : null;
+        byte[] stored = new byte[0];
+        byte[] raw = new byte[0];
+        try {
+            int count;
+            while ((count = in.readInt()) > 0) {
+                int rawLength = in.readInt();
+                int storedLength = in.readInt();
+                if (stored.length < storedLength) {
+                    stored = new byte[storedLength];
+                }
+                in.readFully(stored, 0, storedLength);
+                bytes += 3 * Integer.BYTES + storedLength;
+
+                byte[] chunk = stored;
+                if (inflater != null) {
+                    if (raw.length < rawLength) {
+                        raw = new byte[rawLength];
+                    }
+                    inflate(inflater, stored, storedLength, raw, rawLength);
+                    chunk = raw;
+                }
+                List<P> payloads = codec.readAll(new ByteArrayDataInputStream(chunk, 0, rawLength));
+                if (payloads.size() != count) {
+                    throw new IOException("Chunk has " + payloads.size() + " payloads, expected " + count);
+                }
+                consumer.accept(payloads);
+            }
+            return bytes;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void inflate(Inflater inflater, byte[] in, int inLength, byte[] out, int outLength)
+            throws IOException {
+        inflater.reset();
+        inflater.setInput(in, 0, inLength);
+        try {
+            int length = 0;
+            while (length < outLength) {
+                int n = inflater.inflate(out, length, outLength - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated chunk");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.jgroups.demo.codec;
+
+import org.jgroups.util.Streamable;
+import org.jgroups.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Default codec, JGroups marshalling: compact for primitives, Strings, byte[] and Streamables,
+ * Java serialization for anything else.
+ * Lists write the type once: Streamables of one class as class name + fields,
+ * Serializables through one object stream that shares class descriptors
+ * @param <P>
+ */
+public class ObjectCodec<P> implements PayloadCodec<P> {
+
+    private static final byte PRIMITIVES = 0;
+    private static final byte STREAMABLES = 1;
+    private static final byte SERIALIZABLES = 2;
+
+    private static final Set<Class<?>> PRIMITIVE_TYPES = Set.of(String.class, byte[].class,
+            Long.class, Integer.class, Short.class, Byte.class,
+            Double.class, Float.class, Boolean.class, Character.class);
+
+    @Override
+    public void write(P payload, DataOutput out) throws IOException {
+        Util.objectToStream(payload, out);
+    }
+
+    @Override
+    public P read(DataInput in) throws IOException {
+        try {
+            return Util.objectFromStream(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void writeAll(Collection<P> payloads, DataOutput out) throws IOException {
+        out.writeInt(payloads.size());
+        if (payloads.isEmpty()) {
+            return;
+        }
+        Class<?> type = commonType(payloads);
+        if (type != null && PRIMITIVE_TYPES.contains(type)) {
+            out.writeByte(PRIMITIVES);
+            for (P p : payloads) {
+                Util.objectToStream(p, out);
+            }
+        } else if (type != null && Streamable.class.isAssignableFrom(type)) {
+            out.writeByte(STREAMABLES);
+            out.writeUTF(type.getName());
+            for (P p : payloads) {
+                ((Streamable) p).writeTo(out);
+            }
+        } else {
+            out.writeByte(SERIALIZABLES);
+            var bytes = new ByteArrayOutputStream();
+            try (var objects = new ObjectOutputStream(bytes)) {
+                for (P p : payloads) {
+                    objects.writeUnshared(p);
+                }
+            }
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<P> readAll(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<P> payloads = new ArrayList<>(size);
+        if (size == 0) {
+            return payloads;
+        }
+        try {
+            switch (in.readByte()) {
+                case PRIMITIVES -> {
+                    for (int i = 0; i < size; i++) {
+                        payloads.add(Util.objectFromStream(in));
+                    }
+                }
+                case STREAMABLES -> {
+                    var constructor = Class.forName(in.readUTF())
+                            .getDeclaredConstructor();
+                    for (int i = 0; i < size; i++) {
+                        var p = (Streamable) constructor.newInstance();
+                        p.readFrom(in);
+                        payloads.add((P) p);
+                    }
+                }
+                case SERIALIZABLES -> {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    try (var objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        for (int i = 0; i < size; i++) {
+                            payloads.add((P) objects.readUnshared());
+                        }
+                    }
+                }
+                default -> throw new IOException("Unknown payload list format");
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return payloads;
+    }
+
+    /**
+     * @return Class of all payloads, null if they differ
+     */
+    private Class<?> commonType(Collection<P> payloads) {
+        Class<?> type = null;
+        for (P p : payloads) {
+            if (p == null) {
+                return null;
+            }
+            if (type == null) {
+                type = p.getClass();
+            } else if (type != p.getClass()) {
+                return null;
+            }
+        }
+        return type;
+    }
+}
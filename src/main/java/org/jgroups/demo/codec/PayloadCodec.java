@@ -0,0 +1,60 @@
+package org.jgroups.demo.codec;
+
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary format of payloads in state transfer, RAFT log entries and RPC arguments
+ * @param <P>
+ */
+public interface PayloadCodec<P> {
+
+    void write(P payload, DataOutput out) throws IOException;
+
+    P read(DataInput in) throws IOException;
+
+    /**
+     * @return Expected size in bytes, used to presize buffers
+     */
+    default int estimatedSize(P payload) {
+        return 32;
+    }
+
+    default void writeAll(Collection<P> payloads, DataOutput out) throws IOException {
+        out.writeInt(payloads.size());
+        for (P p : payloads) {
+            write(p, out);
+        }
+    }
+
+    default List<P> readAll(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<P> payloads = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            payloads.add(read(in));
+        }
+        return payloads;
+    }
+
+    default byte[] toBytes(Collection<P> payloads) throws IOException {
+        int size = Integer.BYTES;
+        for (P p : payloads) {
+            size += estimatedSize(p);
+        }
+        var out = new ByteArrayDataOutputStream(size);
+        writeAll(payloads, out);
+        return out.getBuffer()
+                .getBytes();
+    }
+
+    default List<P> fromBytes(byte[] bytes) throws IOException {
+        return readAll(new ByteArrayDataInputStream(bytes));
+    }
+}
@@ -0,0 +1,38 @@
+package org.jgroups.demo.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Plain Java serialization of every payload, the format before codecs
+ * @param <P>
+ */
+public class SerializableCodec<P> implements PayloadCodec<P> {
+
+    @Override
+    public void write(P payload, DataOutput out) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var objects = new ObjectOutputStream(bytes)) {
+            objects.writeObject(payload);
+        }
+        out.writeInt(bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public P read(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (var objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (P) objects.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.jgroups.demo.codec;
+
+import lombok.RequiredArgsConstructor;
+import org.jgroups.util.SizeStreamable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Codec for SizeStreamable payloads. Writes only the payload fields, no class names or type tags
+ * @param <P>
+ */
+@RequiredArgsConstructor
+public class StreamableCodec<P extends SizeStreamable> implements PayloadCodec<P> {
+
+    /**
+     * Creates an empty payload to read into
+     */
+    private final Supplier<P> factory;
+
+    @Override
+    public void write(P payload, DataOutput out) throws IOException {
+        payload.writeTo(out);
+    }
+
+    @Override
+    public P read(DataInput in) throws IOException {
+        P payload = factory.get();
+        try {
+            payload.readFrom(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        return payload;
+    }
+
+    @Override
+    public int estimatedSize(P payload) {
+        return payload.serializedSize();
+    }
+}
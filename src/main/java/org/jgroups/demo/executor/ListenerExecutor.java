@@ -0,0 +1,188 @@
+package org.jgroups.demo.executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.util.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs user listeners off the JGroups delivery threads.
+ * At most maxPending listeners are queued or running, a caller beyond that blocks until one finishes.
+ * Listeners are tracked by payload, so a stop waits for the start of the same payload and the other way round.
+ * Counts the CPU time of the listeners if the JVM supports thread CPU time
+ */
+@Slf4j
+public class ListenerExecutor implements Closeable {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final int maxPending;
+    private final boolean cpuTime = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final Map<Object, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public ListenerExecutor() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param maxConcurrency Listeners running at the same time
+     */
+    public ListenerExecutor(int maxConcurrency) {
+        this(Executors.newFixedThreadPool(maxConcurrency, new DefaultThreadFactory("listener-", true)),
+                maxConcurrency * 64);
+    }
+
+    /**
+     * @param executor   Runs the listeners, closed with this
+     * @param maxPending Listeners queued or running before callers block
+     */
+    public ListenerExecutor(ExecutorService executor, int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+        }
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * Blocks while maxPending listeners are queued or running.
+     * Runs after the listener submitted before for the same payload, e.g. a start after a slow stop
+     *
+     * @param key      Payload the listener is for
+     * @param listener Listener call
+     * @return Completes when the listener returned
+     */
+    public CompletableFuture<Void> submit(Object key, Runnable listener) throws InterruptedException {
+        return submitAfter(List.of(key), listener);
+    }
+
+    /**
+     * Blocks while maxPending listeners are queued or running, the listener itself waits without a thread
+     *
+     * @param keys     Payloads the listener is for, their listeners submitted so far must return first
+     * @param listener Listener call
+     * @return Completes when the listener returned
+     */
+    public CompletableFuture<Void> submitAfter(Collection<?> keys, Runnable listener) throws InterruptedException {
+        pending.acquire();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        List<CompletableFuture<Void>> previous = new ArrayList<>();
+        // Atomic over all keys, so two calls for the same payloads never both miss each other or wait on each other
+        synchronized (inFlight) {
+            for (Object key : keys) {
+                var before = inFlight.put(key, future);
+                if (before != null) {
+                    previous.add(before.exceptionally(e -> null));
+                }
+            }
+        }
+        future.whenComplete((ignored, e) -> keys.forEach(key -> inFlight.remove(key, future)));
+        var after = CompletableFuture.allOf(previous.toArray(CompletableFuture[]::new));
+        (after.isDone() ? run(listener) : after.thenCompose(ignored -> run(listener)))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(null);
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * Runs the listener on the executor, the caller holds a permit
+     */
+    private CompletableFuture<Void> run(Runnable listener) {
+        var task = new Task(listener);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            pending.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return task.future;
+    }
+
+    /**
+     * @return Completes when the listeners submitted so far for these payloads returned, successfully or not
+     */
+    public CompletableFuture<Void> afterInFlight(Collection<?> keys) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Object key : keys) {
+            var future = inFlight.get(key);
+            if (future != null) {
+                futures.add(future.exceptionally(e -> null));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * @return CPU time of all listeners so far, 0 without thread CPU time support
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * @return Listeners queued or running
+     */
+    public int getQueueDepth() {
+        return maxPending - pending.availablePermits();
+    }
+
+    /**
+     * Listeners still queued are cancelled, so nobody waits for them
+     */
+    @Override
+    public void close() {
+        for (Runnable dropped : executor.shutdownNow()) {
+            if (dropped instanceof Task task) {
+                task.future.cancel(false);
+                pending.release();
+            }
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final Runnable listener;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Task(Runnable listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            long cpuStart = cpuTime ? THREADS.getCurrentThreadCpuTime() : 0;
+            try {
+                listener.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                if (cpuTime) {
+                    cpuNanos.add(THREADS.getCurrentThreadCpuTime() - cpuStart);
+                }
+                pending.release();
+            }
+        }
+    }
+}
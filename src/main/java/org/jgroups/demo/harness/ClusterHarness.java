@@ -0,0 +1,298 @@
+package org.jgroups.demo.harness;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.demo.rpc.Node;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.roundrobin.RoundRobinRebalanceFactory;
+import org.jgroups.util.DefaultThreadFactory;
+import org.jgroups.util.Util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * N rpc Nodes in one JVM over SHARED_LOOPBACK ({@value #CONFIG}), no network.
+ * Drives joins, leaves, crashes and leader kills step by step, generates payload churn,
+ * and measures convergence time, payload downtime and churn throughput.
+ * Sets the system property raft_members, so one harness per JVM at a time
+ */
+@Slf4j
+public class ClusterHarness implements Closeable {
+
+    public static final String CONFIG = "raft-loopback.xml";
+
+    private final String cluster;
+    private final int timeout;
+    private final Supplier<RebalanceFactory<Long>> rebalanceFactory;
+
+    private final Map<String, Node<Long>> nodes = new LinkedHashMap<>();
+    private final PayloadTracker<Long> tracker = new PayloadTracker<>();
+    private final List<String> steps = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("harness-churn-", true));
+    private final Random random = new Random(42);
+    private final LongAdder churnOps = new LongAdder();
+    private final LongAdder churnFailures = new LongAdder();
+    private ScheduledFuture<?> churn;
+    private long churnStart;
+    private long churnNanos;
+
+    private List<Long> initialState = List.of();
+    private long nextPayload;
+
+    /**
+     * @param members All RAFT members, nodes can only start with one of these names
+     */
+    public ClusterHarness(String cluster, List<String> members, int timeout) {
+        this(cluster, members, timeout, RoundRobinRebalanceFactory::new);
+    }
+
+    /**
+     * @param rebalanceFactory New factory per node
+     */
+    public ClusterHarness(String cluster,
+                          List<String> members,
+                          int timeout,
+                          Supplier<RebalanceFactory<Long>> rebalanceFactory
+    ) {
+        this.cluster = cluster;
+        this.timeout = timeout;
+        this.rebalanceFactory = rebalanceFactory;
+        System.setProperty("raft_members", String.join(",", members));
+    }
+
+    /**
+     * Initial state of every node that starts later, payloads 0..count-1
+     */
+    public void seed(int count) {
+        List<Long> payloads = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            payloads.add(i);
+        }
+        initialState = payloads;
+        nextPayload = count;
+    }
+
+    public synchronized void start(String name) throws Exception {
+        var node = new Node<Long>(name, CONFIG, timeout, rebalanceFactory.get());
+        node.addStartListener(p -> tracker.started(name, p));
+        node.addStopListener(payloads -> tracker.stopped(name, payloads));
+        node.connect(cluster, initialState);
+        nodes.put(name, node);
+    }
+
+    /**
+     * Graceful leave
+     */
+    public synchronized void leave(String name) throws Exception {
+        var node = nodes.remove(name);
+        node.close();
+        tracker.nodeGone(name);
+    }
+
+    /**
+     * No leave message, the others find out through failure detection
+     */
+    public synchronized void crash(String name) throws Exception {
+        var node = nodes.remove(name);
+        Util.shutdown(node.getChannel());
+        node.close();
+        tracker.nodeGone(name);
+    }
+
+    /**
+     * @return Name of the crashed leader
+     */
+    public synchronized String killLeader() throws Exception {
+        String leader = leader().orElseThrow(() -> new IllegalStateException("No leader"));
+        crash(leader);
+        return leader;
+    }
+
+    public synchronized Optional<String> leader() {
+        return nodes.entrySet()
+                .stream()
+                .filter(entry -> entry.getValue().isLeader())
+                .map(Map.Entry::getKey)
+                .findFirst();
+    }
+
+    public synchronized List<String> live() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+    /**
+     * Adds a new payload or removes an existing one, through a random node, at a fixed rate
+     */
+    public void startChurn(int opsPerSecond) {
+        churnStart = System.nanoTime();
+        churn = scheduler.scheduleAtFixedRate(this::churnOnce, 0, 1_000_000 / opsPerSecond, MICROSECONDS);
+    }
+
+    public void stopChurn() {
+        if (churn != null) {
+            churn.cancel(false);
+            churn = null;
+            churnNanos += System.nanoTime() - churnStart;
+        }
+    }
+
+    private void churnOnce() {
+        Node<Long> node;
+        synchronized (this) {
+            if (nodes.isEmpty()) {
+                return;
+            }
+            var live = new ArrayList<>(nodes.values());
+            node = live.get(random.nextInt(live.size()));
+        }
+        try {
+            var payloads = node.getPayloads();
+            if (payloads.isEmpty() || random.nextBoolean()) {
+                node.add(nextPayload++);
+            } else {
+                node.remove(payloads.get(random.nextInt(payloads.size())));
+            }
+            churnOps.increment();
+        } catch (Exception e) {
+            churnFailures.increment();
+            log.debug("Churn failed: {}", e.toString());
+        }
+    }
+
+    /**
+     * Converged means every payload of the leader's state runs on exactly one live node and nothing else runs
+     *
+     * @return Millis until converged, -1 on timeout
+     */
+    public long awaitConvergence(long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000;
+        while (System.nanoTime() < deadline) {
+            Optional<Node<Long>> leader;
+            synchronized (this) {
+                leader = nodes.values()
+                        .stream()
+                        .filter(Node::isLeader)
+                        .findFirst();
+            }
+            if (leader.isPresent() && isSettled(leader.get()) && tracker.converged(leader.get().getPayloads())) {
+                return (System.nanoTime() - start) / 1_000_000;
+            }
+            Thread.sleep(5);
+        }
+        return -1;
+    }
+
+    /**
+     * The first leader replicates the seed on its rebalance thread, an empty state before that is not converged.
+     * Neither is anything the leader is still moving
+     */
+    private boolean isSettled(Node<Long> leader) {
+        return (initialState.isEmpty() || !leader.getPayloads().isEmpty())
+                && leader.getMetrics().getRebalanceExecutor().isIdle();
+    }
+
+    /**
+     * Runs the action and records how long the cluster takes to converge afterwards
+     */
+    public long step(String name, Action action, long timeoutMillis) throws Exception {
+        action.run();
+        long convergence = awaitConvergence(timeoutMillis);
+        String result = String.format("%-24s converged in %s, live %s, leader %s",
+                name,
+                convergence < 0 ? "TIMEOUT" : convergence + " ms",
+                live(),
+                leader().orElse("-"));
+        steps.add(result);
+        log.info(result);
+        return convergence;
+    }
+
+    public String report() {
+        long nanos = churnNanos + (churn != null ? System.nanoTime() - churnStart : 0);
+        var sb = new StringBuilder("Harness report\n");
+        steps.forEach(step -> sb.append("  ").append(step).append('\n'));
+        sb.append("  payload downtime  ").append(tracker.downtime()).append('\n');
+        sb.append("  payload starts    ").append(tracker.starts()).append('\n');
+        sb.append("  duplicates now    ").append(tracker.duplicates()).append('\n');
+        sb.append(String.format("  churn             %d ops, %d failed, %.1f ops/s%n",
+                churnOps.sum(),
+                churnFailures.sum(),
+                nanos == 0 ? 0.0 : churnOps.sum() * 1e9 / nanos));
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        stopChurn();
+        scheduler.shutdownNow();
+        for (var node : nodes.values()) {
+            try {
+                node.close();
+            } catch (Exception e) {
+                log.warn("Close failed: {}", e.toString());
+            }
+        }
+        nodes.clear();
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * Default scenario: 3 of 5 members start, 2 join, one leaves, one crashes and restarts, the leader is killed,
+     * the missing members restart. Churn runs throughout
+     *
+     * @param args [payloads] [churn ops/s]
+     */
+    public static void main(String[] args) throws Exception {
+        int payloads = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int churnRate = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long stepTimeout = 30000;
+
+        try (var harness = new ClusterHarness("harness", List.of("A", "B", "C", "D", "E"), 10000)) {
+            harness.seed(payloads);
+            harness.step("start A, B, C", () -> {
+                harness.start("A");
+                harness.start("B");
+                harness.start("C");
+            }, stepTimeout);
+            harness.startChurn(churnRate);
+
+            harness.step("join D", () -> harness.start("D"), stepTimeout);
+            harness.step("join E", () -> harness.start("E"), stepTimeout);
+            harness.step("leave E", () -> harness.leave("E"), stepTimeout);
+            harness.step("crash D", () -> harness.crash("D"), stepTimeout);
+            // 3 of 5 must survive the leader kill to elect a new one
+            harness.step("restart D", () -> harness.start("D"), stepTimeout);
+            harness.step("kill leader", harness::killLeader, stepTimeout);
+            harness.step("restart missing", () -> {
+                for (String name : List.of("A", "B", "C", "D", "E")) {
+                    if (!harness.live().contains(name)) {
+                        harness.start(name);
+                    }
+                }
+            }, stepTimeout);
+
+            harness.stopChurn();
+            System.out.println(harness.report());
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,100 @@
+package org.jgroups.demo.harness;
+
+import org.jgroups.demo.metrics.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where every payload runs, as seen by the listeners of all nodes in the JVM.
+ * Downtime of a payload is the time between its last instance stopping and the next start
+ * @param <P>
+ */
+class PayloadTracker<P> {
+
+    private final Map<P, Set<String>> running = new HashMap<>();
+    private final Map<P, Long> downSince = new HashMap<>();
+    private final LatencyHistogram downtime = new LatencyHistogram();
+    private long starts;
+
+    synchronized void started(String node, P payload) {
+        running.computeIfAbsent(payload, p -> new HashSet<>())
+                .add(node);
+        starts++;
+        Long since = downSince.remove(payload);
+        if (since != null) {
+            downtime.recordSince(since);
+        }
+    }
+
+    synchronized void stopped(String node, Collection<P> payloads) {
+        long now = System.nanoTime();
+        for (P payload : payloads) {
+            Set<String> nodes = running.get(payload);
+            if (nodes == null || !nodes.remove(node)) {
+                continue;
+            }
+            if (nodes.isEmpty()) {
+                running.remove(payload);
+                downSince.put(payload, now);
+            }
+        }
+    }
+
+    /**
+     * A node left or crashed, everything it ran is down
+     */
+    synchronized void nodeGone(String node) {
+        Set<P> payloads = new HashSet<>();
+        running.forEach((p, nodes) -> {
+            if (nodes.contains(node)) {
+                payloads.add(p);
+            }
+        });
+        stopped(node, payloads);
+    }
+
+    /**
+     * @param expected Shared state
+     * @return true if every expected payload runs exactly once and nothing else runs
+     */
+    synchronized boolean converged(Collection<P> expected) {
+        // Removed payloads are not down
+        downSince.keySet()
+                .retainAll(expected instanceof Set<?> ? expected : new HashSet<>(expected));
+        if (running.size() != expected.size()) {
+            return false;
+        }
+        for (P p : expected) {
+            Set<String> nodes = running.get(p);
+            if (nodes == null || nodes.size() != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Payloads running on more than one node
+     */
+    synchronized int duplicates() {
+        int duplicates = 0;
+        for (Set<String> nodes : running.values()) {
+            if (nodes.size() > 1) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    synchronized long starts() {
+        return starts;
+    }
+
+    LatencyHistogram downtime() {
+        return downtime;
+    }
+}
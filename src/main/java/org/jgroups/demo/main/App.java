@@ -22,7 +22,7 @@ class App {
 
     void demo(String name, String cluster) {
         try {
-            Node<Config> node = new Node<>(name, "raft.xml", timeout);
+            Node<Config> node = new Node<>(name, "raft.xml", timeout, new ConfigCodec());
 
             // Register listeners
             node.addStopListener(configs -> configs.forEach(Config::stop));
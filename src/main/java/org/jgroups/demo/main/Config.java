@@ -1,5 +1,7 @@
 package org.jgroups.demo.main;
 
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -8,10 +10,12 @@ import java.io.Serializable;
 
 @Slf4j
 @ToString
+@EqualsAndHashCode
 @RequiredArgsConstructor
 public class Config implements Serializable {
     private final static long serialVersionUID = 3672034987577016212L;
 
+    @Getter
     private final long id;
 
     public void start() {
@@ -0,0 +1,28 @@
+package org.jgroups.demo.main;
+
+import org.jgroups.demo.codec.PayloadCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Config is just its id on the wire
+ */
+public class ConfigCodec implements PayloadCodec<Config> {
+
+    @Override
+    public void write(Config payload, DataOutput out) throws IOException {
+        out.writeLong(payload.getId());
+    }
+
+    @Override
+    public Config read(DataInput in) throws IOException {
+        return new Config(in.readLong());
+    }
+
+    @Override
+    public int estimatedSize(Config payload) {
+        return Long.BYTES;
+    }
+}
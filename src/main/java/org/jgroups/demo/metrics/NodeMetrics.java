@@ -0,0 +1,185 @@
+package org.jgroups.demo.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceExecutor;
+import org.jgroups.demo.store.PayloadStore;
+import org.jgroups.stack.DiagnosticsHandler;
+import org.jgroups.util.NameCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebalance, RPC and state transfer metrics of one Node.
+ * Exposed as a JMX MBean and to probe.sh with the key "rebalance"
+ */
+@Getter
+@MBean(description = "Rebalance, RPC and state transfer metrics")
+public class NodeMetrics implements DiagnosticsHandler.ProbeHandler {
+
+    public static final String PROBE_KEY = "rebalance";
+
+    private final LatencyHistogram stopPhase = new LatencyHistogram();
+    private final LatencyHistogram startPhase = new LatencyHistogram();
+    private final LatencyHistogram rpcLatency = new LatencyHistogram();
+    private final LongAdder rpcFailures = new LongAdder();
+    private final LongAdder staleEpochRejections = new LongAdder();
+    private final LongAdder payloadsStarted = new LongAdder();
+    private final LongAdder payloadsStopped = new LongAdder();
+
+    private final LatencyHistogram stateWriteTime = new LatencyHistogram();
+    private final LatencyHistogram stateReadTime = new LatencyHistogram();
+    private final LongAdder stateBytesWritten = new LongAdder();
+    private final LongAdder stateBytesRead = new LongAdder();
+
+    /**
+     * Sources of the gauges, may be null
+     */
+    @Setter
+    private RebalanceExecutor rebalanceExecutor;
+    @Setter
+    private PayloadStore<?> sharedState;
+    @Setter
+    private PayloadStore<?> localState;
+
+    @ManagedAttribute(description = "Full and incremental rebalance run time")
+    public String getRebalanceTimes() {
+        return rebalanceExecutor != null ? rebalanceExecutor.getRunTime().toString() : "";
+    }
+
+    @ManagedAttribute(description = "Rebalances submitted")
+    public long getRebalancesSubmitted() {
+        return rebalanceExecutor != null ? rebalanceExecutor.getSubmitted() : 0;
+    }
+
+    @ManagedAttribute(description = "Rebalances dropped or interrupted for a newer one")
+    public long getRebalancesSuperseded() {
+        return rebalanceExecutor != null ? rebalanceExecutor.getCoalesced() + rebalanceExecutor.getCancelled() : 0;
+    }
+
+    @ManagedAttribute(description = "Stop phase latency, all nodes")
+    public String getStopPhaseTimes() {
+        return stopPhase.toString();
+    }
+
+    @ManagedAttribute(description = "Start fan-out latency, all nodes")
+    public String getStartPhaseTimes() {
+        return startPhase.toString();
+    }
+
+    @ManagedAttribute(description = "Latency of one RPC to one node")
+    public String getRpcTimes() {
+        return rpcLatency.toString();
+    }
+
+    @ManagedAttribute(description = "RPC attempts that failed or timed out")
+    public long getRpcFailureCount() {
+        return rpcFailures.sum();
+    }
+
+    @ManagedAttribute(description = "Rebalances of this node stopped because a node saw a newer leader epoch")
+    public long getStaleEpochCount() {
+        return staleEpochRejections.sum();
+    }
+
+    @ManagedAttribute(description = "Payload starts acknowledged by nodes, this node as leader")
+    public long getPayloadsStartedCount() {
+        return payloadsStarted.sum();
+    }
+
+    @ManagedAttribute(description = "Payload stops acknowledged by nodes, this node as leader")
+    public long getPayloadsStoppedCount() {
+        return payloadsStopped.sum();
+    }
+
+    @ManagedAttribute(description = "Payloads in the shared state")
+    public long getSharedPayloadCount() {
+        return sharedState != null ? sharedState.size() : 0;
+    }
+
+    @ManagedAttribute(description = "Payloads running on this node")
+    public long getLocalPayloadCount() {
+        return localState != null ? localState.size() : 0;
+    }
+
+    @ManagedAttribute(description = "Payloads per node as last dispatched by this node")
+    public String getPayloadsPerNode() {
+        if (sharedState == null) {
+            return "";
+        }
+        Map<String, Integer> counts = new TreeMap<>();
+        sharedState.countByOwner()
+                .forEach((owner, count) -> counts.merge(name(owner), count, Integer::sum));
+        return counts.toString();
+    }
+
+    /**
+     * Owners from the log may be departed nodes the name cache no longer knows
+     */
+    private static String name(Address owner) {
+        if (owner == null) {
+            return "none";
+        }
+        String name = NameCache.get(owner);
+        return name != null ? name : owner.toString();
+    }
+
+    @ManagedAttribute(description = "State transfer write time")
+    public String getStateWriteTimes() {
+        return stateWriteTime.toString();
+    }
+
+    @ManagedAttribute(description = "State transfer read time")
+    public String getStateReadTimes() {
+        return stateReadTime.toString();
+    }
+
+    @ManagedAttribute(description = "State transfer bytes written")
+    public long getStateBytesWrittenCount() {
+        return stateBytesWritten.sum();
+    }
+
+    @ManagedAttribute(description = "State transfer bytes read")
+    public long getStateBytesReadCount() {
+        return stateBytesRead.sum();
+    }
+
+    @Override
+    public Map<String, String> handleProbe(String... keys) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (!PROBE_KEY.equals(key)) {
+                continue;
+            }
+            map.put("rebalance.runs", getRebalanceTimes());
+            map.put("rebalance.submitted", String.valueOf(getRebalancesSubmitted()));
+            map.put("rebalance.superseded", String.valueOf(getRebalancesSuperseded()));
+            map.put("rebalance.stop_phase", getStopPhaseTimes());
+            map.put("rebalance.start_phase", getStartPhaseTimes());
+            map.put("rebalance.rpc", getRpcTimes());
+            map.put("rebalance.rpc_failures", String.valueOf(getRpcFailureCount()));
+            map.put("rebalance.stale_epoch", String.valueOf(getStaleEpochCount()));
+            map.put("rebalance.payloads_started", String.valueOf(getPayloadsStartedCount()));
+            map.put("rebalance.payloads_stopped", String.valueOf(getPayloadsStoppedCount()));
+            map.put("rebalance.payloads_shared", String.valueOf(getSharedPayloadCount()));
+            map.put("rebalance.payloads_local", String.valueOf(getLocalPayloadCount()));
+            map.put("rebalance.payloads_per_node", getPayloadsPerNode());
+            map.put("rebalance.state_write", getStateWriteTimes());
+            map.put("rebalance.state_read", getStateReadTimes());
+            map.put("rebalance.state_bytes_written", String.valueOf(getStateBytesWrittenCount()));
+            map.put("rebalance.state_bytes_read", String.valueOf(getStateBytesReadCount()));
+        }
+        return map;
+    }
+
+    @Override
+    public String[] supportedKeys() {
+        return new String[]{PROBE_KEY};
+    }
+}
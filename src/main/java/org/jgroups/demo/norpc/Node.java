@@ -2,34 +2,44 @@ package org.jgroups.demo.norpc;
 
 import lombok.extern.slf4j.Slf4j;
 import org.jgroups.*;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.demo.codec.ChunkedPayloadStream;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.executor.ListenerExecutor;
 import org.jgroups.demo.norpc.exception.NodeException;
 import org.jgroups.demo.norpc.listener.StartListener;
 import org.jgroups.demo.norpc.listener.StopListener;
+import org.jgroups.demo.store.PayloadStore;
 import org.jgroups.protocols.raft.Role;
 import org.jgroups.raft.RaftHandle;
-import org.jgroups.util.Util;
+import org.jgroups.util.ByteArrayDataInputStream;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class Node<P> implements Receiver, Closeable {
 
+    static {
+        ClassConfigurator.addIfAbsent(NodeHeader.MAGIC_ID, NodeHeader.class);
+    }
+
     private final SharedState<P> sharedState = new SharedState<>();
-    private final List<P> localPayload = new LinkedList<>();
+    private final PayloadStore<P> localPayload = new PayloadStore<>();
 
     private final List<StopListener<P>> stopListeners = new LinkedList<>();
     private final List<StartListener<P>> startListeners = new LinkedList<>();
 
     private final JChannel jChannel;
     private final RaftHandle raftHandle;
-
-    private Lock lock;
-    private Condition allStop;
+    private final PayloadCodec<P> codec;
+    private final ListenerExecutor listenerExecutor;
+    private ChunkedPayloadStream<P> stateTransfer;
+    private final RebalanceCoordinator<P> rebalanceCoordinator;
 
     /**
      * @param name    Node name
@@ -45,8 +55,36 @@ public class Node<P> implements Receiver, Closeable {
      * @param jGroupConfig JGroups config Xml file
      */
     public Node(String name, List<P> payload, String jGroupConfig) {
-        List<P> list = sharedState.getPayloadToBalance();
-        list.addAll(payload);
+        this(name, payload, jGroupConfig, new ObjectCodec<>());
+    }
+
+    /**
+     * @param name         Node name
+     * @param payload      List<P> to balance in a Cluster
+     * @param jGroupConfig JGroups config Xml file
+     * @param codec        Payload format for start messages and state transfer
+     */
+    public Node(String name, List<P> payload, String jGroupConfig, PayloadCodec<P> codec) {
+        this(name, payload, jGroupConfig, codec, new ListenerExecutor());
+    }
+
+    /**
+     * @param name             Node name
+     * @param payload          List<P> to balance in a Cluster
+     * @param jGroupConfig     JGroups config Xml file
+     * @param codec            Payload format for start messages and state transfer
+     * @param listenerExecutor Runs Start and Stop listeners off the delivery thread, closed with the Node
+     */
+    public Node(String name,
+                List<P> payload,
+                String jGroupConfig,
+                PayloadCodec<P> codec,
+                ListenerExecutor listenerExecutor
+    ) {
+        this.codec = codec;
+        this.listenerExecutor = listenerExecutor;
+        this.stateTransfer = new ChunkedPayloadStream<>(codec);
+        sharedState.getPayloadToBalance().addAll(payload);
         try {
             jChannel = new JChannel(jGroupConfig);
             jChannel.setReceiver(this);
@@ -54,6 +92,7 @@ public class Node<P> implements Receiver, Closeable {
 
             raftHandle = new RaftHandle(jChannel, null);
             raftHandle.raftId(name);
+            rebalanceCoordinator = new RebalanceCoordinator<>(jChannel, sharedState, codec, raftHandle::isLeader);
             raftHandle.addRoleListener(role -> {
                 log.info("Role: {}", role);
 
@@ -68,6 +107,30 @@ public class Node<P> implements Receiver, Closeable {
         }
     }
 
+    /**
+     * State transfer streams payloads in chunks, call before connect
+     *
+     * @param chunkSize Payloads per chunk
+     * @param compress  Deflate every chunk
+     */
+    public void setStateTransfer(int chunkSize, boolean compress) {
+        stateTransfer = new ChunkedPayloadStream<>(codec, chunkSize, compress);
+    }
+
+    /**
+     * @param stopTimeout Millis the leader waits for stop confirmations before it retries the rebalance
+     */
+    public void setStopTimeout(long stopTimeout) {
+        rebalanceCoordinator.setStopTimeout(stopTimeout);
+    }
+
+    /**
+     * @return Rebalance metrics, recorded while this node is leader
+     */
+    public RebalanceMetrics getRebalanceMetrics() {
+        return rebalanceCoordinator.getMetrics();
+    }
+
     public void addStopListener(StopListener<P> listener) {
         stopListeners.add(listener);
     }
@@ -85,13 +148,18 @@ public class Node<P> implements Receiver, Closeable {
     @Override
     public void viewAccepted(View view) {
         log.info("Cluster change {}", view);
+        rebalanceCoordinator.viewChanged(view);
 
         if (raftHandle.isLeader()) {
             rebalance(view);
             return;
         }
         if (getClusterSize(view) == 1) {
-            notifyStopListeners();
+            try {
+                notifyStopListeners();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -100,89 +168,94 @@ public class Node<P> implements Receiver, Closeable {
                 .size();
     }
 
-    private void notifyStopListeners() {
-        for (StopListener<P> listener : stopListeners) {
-            listener.onStopAll(localPayload);
+    /**
+     * Stops everything running here on the listener executor, once the Start listeners of those payloads returned
+     */
+    private CompletableFuture<Void> notifyStopListeners() throws InterruptedException {
+        List<P> stopped = localPayload.removeAll(localPayload.snapshot());
+        if (stopped.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
+        return listenerExecutor.submitAfter(stopped, () -> {
+            for (StopListener<P> listener : stopListeners) {
+                listener.onStopAll(stopped);
+            }
+        });
     }
 
     private void rebalance(View view) {
-        lock = new ReentrantLock();
-        allStop = lock.newCondition();
-
-        Rebalance<P> r = new Rebalance<>(view,
-                jChannel,
-                sharedState,
-                allStop,
-                lock
-        );
-        Thread t = new Thread(r);
-        t.setDaemon(false);
-        t.start();
+        rebalanceCoordinator.rebalance(view);
     }
 
     @Override
     public void receive(Message message) {
-        if (message.getObject().equals("stop_all")) {
-            receiveStopAll(message);
-            return;
-        }
-        if (message.getObject().equals("confirm_all_stopped")) {
-            receiveStopAllConfirm(message);
+        NodeHeader header = message.getHeader(NodeHeader.ID);
+        if (header == null) {
             return;
         }
-        if (message.getObject() instanceof StartObject) {
-            receiveStartObject(message);
+        switch (header.getOp()) {
+            case STOP_ALL -> receiveStopAll(message, header.getRound());
+            case STOP_ALL_CONFIRM -> rebalanceCoordinator.confirm(header.getRound(), message.getSrc());
+            case START -> receiveStart(message);
         }
     }
 
-    private void receiveStopAll(Message message) {
-        if (!localPayload.isEmpty()) {
-            notifyStopListeners();
-        }
-        localPayload.clear();
-
+    private void receiveStopAll(Message message, long round) {
         Address leader = message.getSrc();
-        sendStopAllConfirm(leader);
+        try {
+            notifyStopListeners().whenComplete((ignored, e) -> {
+                if (e != null) {
+                    log.error("Error", e);
+                }
+                sendStopAllConfirm(leader, round);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void sendStopAllConfirm(Address node) {
+    private void sendStopAllConfirm(Address node, long round) {
         try {
-            jChannel.send(new ObjectMessage(node, "confirm_all_stopped"));
+            var header = new NodeHeader(NodeHeader.Op.STOP_ALL_CONFIRM, round);
+            jChannel.send(new EmptyMessage(node).putHeader(NodeHeader.ID, header));
         } catch (Exception e) {
             log.error("Error", e);
             throw new NodeException(e);
         }
     }
 
-    private void receiveStopAllConfirm(Message message) {
-        Address node = message.getSrc();
-        sharedState.getStopConfirms().put(node, true);
-
-        if (sharedState.allStopped()) {
-            lock.lock();
-            try {
-                allStop.signal();
-            } finally {
-                lock.unlock();
+    private void receiveStart(Message message) {
+        try {
+            List<P> payloads = codec.readAll(new ByteArrayDataInputStream(message.getArray(),
+                    message.getOffset(),
+                    message.getLength()));
+            for (P payload : payloads) {
+                if (!localPayload.add(payload)) {
+                    continue;
+                }
+                listenerExecutor.submit(payload, () -> notifyStartListeners(payload))
+                        .whenComplete((ignored, e) -> {
+                            if (e != null) {
+                                log.warn("Start of {} failed: {}", payload, e.toString());
+                                localPayload.remove(payload);
+                            }
+                        });
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Error", e);
+            throw new NodeException(e);
         }
     }
 
-    private void receiveStartObject(Message message) {
-        StartObject<P> object = message.getObject();
-        notifyStartListeners(object);
-
-        localPayload.add(object.getPayload());
-    }
-
     /**
      *
-     * @param object Payload<P>
+     * @param payload P
      */
-    private void notifyStartListeners(StartObject<P> object) {
+    private void notifyStartListeners(P payload) {
         for (StartListener<P> listener : startListeners) {
-            listener.onStart(object.getPayload());
+            listener.onStart(payload);
         }
     }
 
@@ -190,37 +263,34 @@ public class Node<P> implements Receiver, Closeable {
      * @param payload Updated Payload to balance in a Cluster
      */
     public void setPayload(List<P> payload) {
-        List<P> list = sharedState.getPayloadToBalance();
-        list.clear();
-        list.addAll(payload);
+        sharedState.getPayloadToBalance().replaceAll(payload);
 
         rebalance(jChannel.getView());
     }
 
     @Override
     public void getState(OutputStream output) throws Exception {
-        synchronized (sharedState) {
-            Util.objectToStream(sharedState, new DataOutputStream(output));
-        }
+        List<P> payloads = sharedState.getPayloadToBalance().snapshot();
+
+        var out = new DataOutputStream(output);
+        stateTransfer.write(payloads, out);
+        out.flush();
     }
 
     @Override
     public void setState(InputStream input) throws Exception {
-        synchronized (sharedState) {
-            DataInputStream inputStream = new DataInputStream(input);
-            SharedState<P> fromStream = Util.objectFromStream(inputStream);
-
-            sharedState.getStopConfirms().clear();
-            sharedState.getStopConfirms().putAll(fromStream.getStopConfirms());
+        DataInputStream in = new DataInputStream(input);
+        List<P> payloads = new ArrayList<>();
+        stateTransfer.read(in, payloads::addAll);
 
-            sharedState.getPayloadToBalance().clear();
-            sharedState.getPayloadToBalance().addAll(fromStream.getPayloadToBalance());
-        }
+        sharedState.getPayloadToBalance().replaceAll(payloads);
     }
 
     @Override
     public void close() {
+        rebalanceCoordinator.close();
         jChannel.close();
+        listenerExecutor.close();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package org.jgroups.demo.norpc;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.jgroups.Header;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Opcode of a Node control message. Receivers dispatch on the header, the message body is read only for START.
+ * Registered with the ClassConfigurator by {@link Node}
+ */
+@Getter
+@NoArgsConstructor
+public class NodeHeader extends Header {
+
+    /**
+     * Magic number of this header class
+     */
+    public static final short MAGIC_ID = 1900;
+    /**
+     * Key of this header in a message, outside the range of JGroups protocol IDs
+     */
+    public static final short ID = 1900;
+
+    public enum Op {
+        /**
+         * Stop everything running on the receiver, no body
+         */
+        STOP_ALL,
+        /**
+         * Receiver stopped everything, no body
+         */
+        STOP_ALL_CONFIRM,
+        /**
+         * Start the payloads in the body, encoded by the Node's codec
+         */
+        START;
+
+        private static final Op[] VALUES = values();
+    }
+
+    private Op op;
+    /**
+     * Rebalance round a STOP_ALL belongs to, echoed by its STOP_ALL_CONFIRM
+     */
+    private long round;
+
+    public NodeHeader(Op op) {
+        this(op, 0);
+    }
+
+    public NodeHeader(Op op, long round) {
+        this.op = op;
+        this.round = round;
+    }
+
+    @Override
+    public short getMagicId() {
+        return MAGIC_ID;
+    }
+
+    @Override
+    public Supplier<? extends Header> create() {
+        return NodeHeader::new;
+    }
+
+    @Override
+    public int serializedSize() {
+        return Byte.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(op.ordinal());
+        out.writeLong(round);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        op = Op.VALUES[in.readByte()];
+        round = in.readLong();
+    }
+
+    @Override
+    public String toString() {
+        return "NodeHeader " + op + " round " + round;
+    }
+}
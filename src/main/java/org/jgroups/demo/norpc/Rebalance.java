@@ -3,80 +3,89 @@ package org.jgroups.demo.norpc;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.EmptyMessage;
 import org.jgroups.JChannel;
-import org.jgroups.ObjectMessage;
 import org.jgroups.View;
+import org.jgroups.demo.codec.PayloadCodec;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.Callable;
 
+/**
+ * One round: stop everything on all nodes, wait for their confirmations, then start round robin
+ * @param <P>
+ */
 @Slf4j
 @RequiredArgsConstructor
-public class Rebalance<P> implements Runnable {
+public class Rebalance<P> implements Callable<Boolean> {
 
     private final View view;
     private final JChannel jChannel;
     private final SharedState<P> sharedState;
 
-    private final Condition allStop;
-    private final Lock lock;
+    private final StopBarrier barrier;
+    /**
+     * Millis to wait for the stop confirmations
+     */
+    private final long stopTimeout;
 
-    @Override
-    public void run() {
-        log.info("RoundRobinRebalance...");
-        try {
-            List<Address> nodes = view.getMembers();
-            for (Address node : nodes) {
-                sendStopAll(node);
-            }
-            waitStopAllConfirmations();
-            sharedState.getStopConfirms().clear();
+    private final PayloadCodec<P> codec;
+    private final RebalanceMetrics metrics;
 
-            int n = 0;
-            for (P payload : sharedState.getPayloadToBalance()) {
-                Address node = nodes.get(n++);
-                sendStart(node, payload);
-                if (n == nodes.size()) {
-                    n = 0;
-                }
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+    /**
+     * @return false if confirmations were missing at the deadline, nothing was started then
+     */
+    @Override
+    public Boolean call() throws Exception {
+        log.info("RoundRobinRebalance round {}...", barrier.getRound());
+        List<Address> nodes = view.getMembers();
+        long start = System.nanoTime();
+        for (Address node : nodes) {
+            sendStopAll(node);
         }
-    }
+        if (!barrier.await(stopTimeout)) {
+            log.warn("Round {}: no stop confirmation from {} after {} ms",
+                    barrier.getRound(), barrier.getPending(), stopTimeout);
+            return false;
+        }
+        metrics.getStopPhase().recordSince(start);
+        metrics.getStragglerWait().record(barrier.getStragglerWait());
 
-    private void waitStopAllConfirmations() throws InterruptedException {
-        while (!allStopped()) {
-            lock.lock();
-            try {
-                allStop.await();
-            } finally {
-                lock.unlock();
+        int n = 0;
+        var store = sharedState.getPayloadToBalance();
+        Map<Address, List<P>> assignment = new LinkedHashMap<>();
+        for (P payload : store.snapshot()) {
+            Address node = nodes.get(n++);
+            assignment.computeIfAbsent(node, ignored -> new ArrayList<>())
+                    .add(payload);
+            if (n == nodes.size()) {
+                n = 0;
             }
         }
+        for (var entry : assignment.entrySet()) {
+            sendStart(entry.getKey(), entry.getValue());
+            entry.getValue()
+                    .forEach(p -> store.setOwner(p, entry.getKey()));
+        }
+        return true;
     }
 
     private void sendStopAll(Address node) throws Exception {
-        jChannel.send(new ObjectMessage(node, "stop_all"));
-        sharedState.getStopConfirms().put(node, false);
-    }
-
-    private boolean allStopped() {
-        Map<Address, Boolean> confirmations = sharedState.getStopConfirms();
-        for (boolean stopped : confirmations.values()) {
-            if (!stopped) {
-                return false;
-            }
-        }
-        return true;
+        var header = new NodeHeader(NodeHeader.Op.STOP_ALL, barrier.getRound());
+        jChannel.send(new EmptyMessage(node).putHeader(NodeHeader.ID, header));
     }
 
-    private void sendStart(Address node, P payload) throws Exception {
-        var object = new StartObject<>(payload);
-        var message = new ObjectMessage(node, object).
-                setSrc(jChannel.getAddress());
+    /**
+     * All payloads of a node in one message
+     */
+    private void sendStart(Address node, List<P> payloads) throws Exception {
+        var message = new BytesMessage(node, codec.toBytes(payloads))
+                .putHeader(NodeHeader.ID, new NodeHeader(NodeHeader.Op.START))
+                .setSrc(jChannel.getAddress());
 
         jChannel.send(message);
     }
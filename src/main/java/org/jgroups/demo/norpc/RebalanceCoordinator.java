@@ -0,0 +1,133 @@
+package org.jgroups.demo.norpc;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.View;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.util.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the rebalance rounds of the leader on one thread.
+ * A new round cancels the running one, a round whose stop confirmations miss the deadline
+ * is retried with the current view as long as this node is leader
+ * @param <P>
+ */
+@Slf4j
+public class RebalanceCoordinator<P> implements Closeable {
+
+    public static final long DEFAULT_STOP_TIMEOUT = 10000;
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("norpc-rebalance-", false));
+
+    private final JChannel jChannel;
+    private final SharedState<P> sharedState;
+    private final PayloadCodec<P> codec;
+    private final BooleanSupplier leader;
+
+    @Getter
+    private final RebalanceMetrics metrics = new RebalanceMetrics();
+    /**
+     * Millis to wait for the stop confirmations of a round
+     */
+    @Setter
+    private volatile long stopTimeout = DEFAULT_STOP_TIMEOUT;
+
+    private long rounds;
+    private volatile StopBarrier barrier;
+    private Future<?> current;
+
+    /**
+     * @param leader true while this node is leader
+     */
+    public RebalanceCoordinator(JChannel jChannel,
+                                SharedState<P> sharedState,
+                                PayloadCodec<P> codec,
+                                BooleanSupplier leader
+    ) {
+        this.jChannel = jChannel;
+        this.sharedState = sharedState;
+        this.codec = codec;
+        this.leader = leader;
+    }
+
+    /**
+     * Starts a new round for the view, cancels the running one
+     */
+    public synchronized void rebalance(View view) {
+        if (current != null && current.cancel(true)) {
+            metrics.getSuperseded().increment();
+        }
+        var round = new StopBarrier(++rounds, view.getMembers());
+        barrier = round;
+        var rebalance = new Rebalance<>(view, jChannel, sharedState, round, stopTimeout, codec, metrics);
+        try {
+            current = executorService.submit(() -> run(rebalance, round.getRound()));
+        } catch (RejectedExecutionException e) {
+            log.debug("Rebalance after close ignored");
+        }
+    }
+
+    /**
+     * Stop confirmation from a node
+     */
+    public void confirm(long round, Address node) {
+        var b = barrier;
+        if (b != null) {
+            b.confirm(round, node);
+        }
+    }
+
+    /**
+     * The running round stops waiting for nodes that left
+     */
+    public void viewChanged(View view) {
+        var b = barrier;
+        if (b != null) {
+            b.retainAll(view.getMembers());
+        }
+    }
+
+    private void run(Rebalance<P> rebalance, long round) {
+        try {
+            if (rebalance.call()) {
+                metrics.getCompleted().increment();
+                return;
+            }
+            metrics.getStopTimeouts().increment();
+            // Runs after this round returned, so it does not cancel itself
+            executorService.execute(() -> retry(round));
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            log.debug("Retry after close ignored");
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Only if no newer round started meanwhile
+     */
+    private synchronized void retry(long round) {
+        if (round == rounds && leader.getAsBoolean()) {
+            rebalance(jChannel.getView());
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+}
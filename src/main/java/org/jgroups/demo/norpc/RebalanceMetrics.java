@@ -0,0 +1,40 @@
+package org.jgroups.demo.norpc;
+
+import lombok.Getter;
+import org.jgroups.demo.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebalance metrics of a norpc Node, recorded on the leader
+ */
+@Getter
+public class RebalanceMetrics {
+
+    /**
+     * From the STOP_ALL messages to the last confirmation
+     */
+    private final LatencyHistogram stopPhase = new LatencyHistogram();
+    /**
+     * From the first to the last confirmation of a round
+     */
+    private final LatencyHistogram stragglerWait = new LatencyHistogram();
+    /**
+     * Rounds whose confirmations missed the deadline
+     */
+    private final LongAdder stopTimeouts = new LongAdder();
+    /**
+     * Rounds cancelled for a newer one
+     */
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    @Override
+    public String toString() {
+        return "stop phase " + stopPhase
+                + ", straggler wait " + stragglerWait
+                + ", stop timeouts " + stopTimeouts.sum()
+                + ", superseded " + superseded.sum()
+                + ", completed " + completed.sum();
+    }
+}
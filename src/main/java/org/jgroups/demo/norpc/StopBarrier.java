@@ -0,0 +1,97 @@
+package org.jgroups.demo.norpc;
+
+import org.jgroups.Address;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Stop confirmations of one rebalance round. Thread-safe,
+ * confirmations of other rounds are ignored and nodes that left count as confirmed
+ */
+public class StopBarrier {
+
+    private final long round;
+    private final Set<Address> pending = ConcurrentHashMap.newKeySet();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicLong firstConfirm = new AtomicLong();
+    private volatile long lastConfirm;
+
+    /**
+     * @param round Round of the STOP_ALL messages
+     * @param nodes Nodes that have to confirm
+     */
+    public StopBarrier(long round, Collection<Address> nodes) {
+        this.round = round;
+        pending.addAll(nodes);
+        checkDone();
+    }
+
+    public long getRound() {
+        return round;
+    }
+
+    /**
+     * @param round Round echoed by the node
+     */
+    public void confirm(long round, Address node) {
+        if (round != this.round || !pending.remove(node)) {
+            return;
+        }
+        long now = System.nanoTime();
+        firstConfirm.compareAndSet(0, now);
+        lastConfirm = now;
+        checkDone();
+    }
+
+    /**
+     * Stops waiting for nodes that are not members anymore
+     */
+    public void retainAll(Collection<Address> members) {
+        pending.retainAll(members);
+        checkDone();
+    }
+
+    /**
+     * @param timeout Millis
+     * @return false if nodes are still pending after the timeout
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        try {
+            done.get(timeout, MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return Nanos between the first and the last confirmation, what the stop phase waited on stragglers
+     */
+    public long getStragglerWait() {
+        long first = firstConfirm.get();
+        return first == 0 ? 0 : lastConfirm - first;
+    }
+
+    /**
+     * @return Nodes that did not confirm yet
+     */
+    public Set<Address> getPending() {
+        return Set.copyOf(pending);
+    }
+
+    private void checkDone() {
+        if (pending.isEmpty()) {
+            done.complete(null);
+        }
+    }
+}
@@ -4,29 +4,50 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.jgroups.*;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.demo.codec.ChunkedPayloadStream;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.executor.ListenerExecutor;
+import org.jgroups.demo.metrics.NodeMetrics;
 import org.jgroups.demo.rpc.listener.StartListener;
 import org.jgroups.demo.rpc.listener.StopListener;
+import org.jgroups.demo.rpc.node.load.AdaptiveRebalancePolicy;
+import org.jgroups.demo.rpc.node.load.LoadMonitor;
+import org.jgroups.demo.rpc.node.rebalance.MergeRebalance;
 import org.jgroups.demo.rpc.node.rebalance.RebalanceExecutor;
 import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.ResumeAssignment;
+import org.jgroups.demo.rpc.node.rebalance.ResumeRebalance;
 import org.jgroups.demo.rpc.node.rebalance.roundrobin.RoundRobinRebalanceFactory;
+import org.jgroups.demo.rpc.node.rebalance.weighted.NodeWeight;
+import org.jgroups.demo.rpc.node.routing.RoutingTable;
+import org.jgroups.demo.rpc.node.rpc.AsyncRpcDispatcher;
 import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
 import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethods;
+import org.jgroups.demo.rpc.node.state.Change;
+import org.jgroups.demo.rpc.node.state.GroupCommit;
+import org.jgroups.demo.rpc.node.state.PayloadStateMachine;
+import org.jgroups.demo.rpc.node.state.ReplicatedAssignmentLog;
+import org.jgroups.demo.store.AssignmentFile;
+import org.jgroups.jmx.JmxConfigurator;
 import org.jgroups.protocols.raft.RAFT;
 import org.jgroups.protocols.raft.RAFT.RoleChange;
 import org.jgroups.protocols.raft.Role;
 import org.jgroups.raft.RaftHandle;
 import org.jgroups.util.Util;
 
+import javax.management.ObjectName;
 import java.io.Closeable;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * A Node in a Cluster with automatic Load Balancing and High Consistency (CP)
@@ -35,12 +56,19 @@ import static java.util.Objects.requireNonNull;
 @Slf4j
 public class Node<P> implements Receiver, RoleChange, Closeable {
     /**
-     * Shared State
+     * Max changes coalesced into one RAFT log entry
      */
-    private final List<P> payload = new LinkedList<>();
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    /**
+     * Shared State, replicated through the RAFT log
+     */
+    private final PayloadStateMachine<P> stateMachine;
+    private final PayloadCodec<P> codec;
 
     private final JChannel jChannel;
     private final RaftHandle raftHandle;
+    private final GroupCommit<P> groupCommit;
     private final RpcDispatcher rpcDispatcher;
 
     /**
@@ -48,9 +76,31 @@ public class Node<P> implements Receiver, RoleChange, Closeable {
      */
     private final RemoteNodeMethods<P> remoteNodeMethods;
     private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+    /**
+     * Dispatcher of the current leader term, see {@link #epochDispatcher()}
+     */
+    private volatile RemoteNodeMethodDispatcher<P> epochDispatcher;
     private final RebalanceFactory<P> rebalanceFactory;
     private final RebalanceExecutor rebalanceExecutor;
+    private final ListenerExecutor listenerExecutor;
+    private final NodeMetrics metrics = new NodeMetrics();
     private final int timeout;
+    private LoadMonitor<P> loadMonitor;
+    /**
+     * Payloads running here, next to the RAFT log. See {@link #setPersistAssignment}
+     */
+    private boolean persistAssignment = true;
+    private volatile boolean stopOnMinority = true;
+    private AssignmentFile<P> assignmentFile;
+    /**
+     * Last view seen, to find the members that joined
+     */
+    private View view;
+
+    /**
+     * State the first leader replicates if the RAFT log is empty
+     */
+    private volatile List<P> initialState = List.of();
 
     /**
      * @param name    Node name
@@ -72,26 +122,197 @@ public class Node<P> implements Receiver, RoleChange, Closeable {
                 Integer timeout,
                 RebalanceFactory<P> rebalanceFactory
     ) throws Exception {
+        this(name, config, timeout, rebalanceFactory, new RebalanceExecutor());
+    }
+
+    /**
+     * @param codec Payload format for the RAFT log, snapshots and RPC arguments
+     */
+    public Node(String name,
+                String config,
+                Integer timeout,
+                PayloadCodec<P> codec
+    ) throws Exception {
+        this(name, config, timeout, new RoundRobinRebalanceFactory<>(), new RebalanceExecutor(), codec);
+    }
+
+    /**
+     * @param rebalanceExecutor RebalanceExecutor with its quiet period, also holds the rebalance counters
+     */
+    public Node(String name,
+                String config,
+                Integer timeout,
+                RebalanceFactory<P> rebalanceFactory,
+                RebalanceExecutor rebalanceExecutor
+    ) throws Exception {
+        this(name, config, timeout, rebalanceFactory, rebalanceExecutor, new ObjectCodec<>());
+    }
 
+    /**
+     * @param codec Payload format for the RAFT log, snapshots and RPC arguments
+     */
+    public Node(String name,
+                String config,
+                Integer timeout,
+                RebalanceFactory<P> rebalanceFactory,
+                RebalanceExecutor rebalanceExecutor,
+                PayloadCodec<P> codec
+    ) throws Exception {
+        this(name, config, timeout, rebalanceFactory, rebalanceExecutor, codec, new ListenerExecutor());
+    }
+
+    /**
+     * @param listenerExecutor Runs Start and Stop listeners with bounded concurrency, closed with the Node
+     */
+    public Node(String name,
+                String config,
+                Integer timeout,
+                RebalanceFactory<P> rebalanceFactory,
+                RebalanceExecutor rebalanceExecutor,
+                PayloadCodec<P> codec,
+                ListenerExecutor listenerExecutor
+    ) throws Exception {
+        this.listenerExecutor = requireNonNull(listenerExecutor);
+        this.codec = requireNonNull(codec);
         this.rebalanceFactory = requireNonNull(rebalanceFactory);
+        this.rebalanceExecutor = requireNonNull(rebalanceExecutor);
         this.timeout = requireNonNull(timeout);
 
         jChannel = new JChannel(config);
         jChannel.setReceiver(this);
         jChannel.setName(name);
 
-        raftHandle = new RaftHandle(jChannel, null);
+        stateMachine = new PayloadStateMachine<>(codec);
+        stateMachine.setMetrics(metrics);
+        raftHandle = new RaftHandle(jChannel, stateMachine);
         raftHandle.addRoleListener(this);
         raftHandle.raftId(name);
+        stateMachine.addListener(this::onStateChange);
+        groupCommit = new GroupCommit<>(raftHandle, stateMachine, timeout, MAX_BATCH_SIZE);
 
-        remoteNodeMethods = new RemoteNodeMethods<>(jChannel);
-        rpcDispatcher = new RpcDispatcher(jChannel, remoteNodeMethods);
+        remoteNodeMethods = new RemoteNodeMethods<>(jChannel, codec, listenerExecutor);
+        rpcDispatcher = new AsyncRpcDispatcher(jChannel, remoteNodeMethods);
+        rpcDispatcher.setMethodLookup(RemoteNodeMethods.METHOD_LOOKUP);
         rpcDispatcher.setReceiver(this);
 
-        rebalanceExecutor = new RebalanceExecutor();
         remoteNodeMethodDispatcher = new RemoteNodeMethodDispatcher<>(
                 rpcDispatcher,
-                timeout);
+                timeout,
+                codec,
+                stateMachine.getStore(),
+                RemoteNodeMethodDispatcher.DEFAULT_RETRIES,
+                metrics,
+                new ReplicatedAssignmentLog<>(groupCommit, timeout));
+
+        metrics.setRebalanceExecutor(rebalanceExecutor);
+        metrics.setSharedState(stateMachine.getStore());
+        metrics.setLocalState(remoteNodeMethods.getPayloadNode());
+        jChannel.getProtocolStack()
+                .getTransport()
+                .registerProbeHandler(metrics);
+        try {
+            JmxConfigurator.register(metrics, Util.getMBeanServer(), metricsObjectName());
+        } catch (Exception e) {
+            log.warn("Metrics not registered with JMX: {}", e.toString());
+        }
+    }
+
+    private String metricsObjectName() {
+        return "jgroups-demo:type=NodeMetrics,name=" + ObjectName.quote(jChannel.getName());
+    }
+
+    /**
+     * API
+     *
+     * @return Rebalance, RPC and state transfer metrics, also on JMX and probe.sh key "rebalance"
+     */
+    public NodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * API
+     *
+     * @return Snapshot of the shared state as applied on this node
+     */
+    public List<P> getPayloads() {
+        return stateMachine.getPayloads();
+    }
+
+    /**
+     * API
+     * Owner of every running payload as committed in the RAFT log, the same on every node.
+     * Lookups are local and lock-free, listeners get the delta of each version
+     */
+    public RoutingTable<P> getRoutingTable() {
+        return stateMachine.getRoutingTable();
+    }
+
+    /**
+     * API
+     */
+    public boolean isLeader() {
+        return raftHandle.isLeader();
+    }
+
+    /**
+     * API
+     */
+    public JChannel getChannel() {
+        return jChannel;
+    }
+
+    /**
+     * API
+     * RAFT snapshots are streamed in chunks, call before connect
+     *
+     * @param chunkSize Payloads per chunk
+     * @param compress  Deflate every chunk
+     */
+    public void setStateTransfer(int chunkSize, boolean compress) {
+        stateMachine.setStateTransfer(new ChunkedPayloadStream<>(codec, chunkSize, compress));
+    }
+
+    /**
+     * API
+     * Capacity weight advertised in this node's address, used by WeightedRebalanceFactory. Call before connect
+     *
+     * @param weight Relative capacity, for example cores
+     */
+    public void setWeight(int weight) {
+        jChannel.addAddressGenerator(NodeWeight.generator(weight));
+    }
+
+    /**
+     * API
+     * While leader, samples the load of all nodes every interval and moves payloads from hot to cold nodes.
+     * A later full rebalance may move them back, depending on the RebalanceFactory
+     *
+     * @param policy   Thresholds, moves per round and cooldown
+     * @param interval Millis between samples
+     */
+    public synchronized void enableAdaptiveRebalance(AdaptiveRebalancePolicy policy, long interval) {
+        if (loadMonitor != null) {
+            loadMonitor.close();
+        }
+        loadMonitor = new LoadMonitor<>(policy,
+                rebalanceExecutor,
+                this::epochDispatcher,
+                stateMachine.getStore(),
+                () -> jChannel.getView().getMembers(),
+                raftHandle::isLeader);
+        loadMonitor.start(interval);
+    }
+
+    /**
+     * API
+     * Work done for a payload running on this node, the load samples report it as rate per payload
+     *
+     * @param units For example messages processed
+     */
+    public void recordWork(P payload, long units) {
+        remoteNodeMethods.getLoadMeter()
+                .record(payload, units);
     }
 
     public void addStopListener(StopListener<P> listener) {
@@ -106,45 +327,179 @@ public class Node<P> implements Receiver, RoleChange, Closeable {
 
     /**
      * API
-     * Ignore state if payloads shared state is not empty
+     * Record the payloads running here in a file next to the RAFT log. After a restart the leader starts them
+     * here again if its log still assigns them to this node's previous address, instead of placing them anew.
+     * On by default, call before connect
+     */
+    public void setPersistAssignment(boolean persistAssignment) {
+        this.persistAssignment = persistAssignment;
+    }
+
+    /**
+     * API
+     * Stop all payloads of a node that ends up in a minority partition. On by default, so a payload never
+     * runs twice. Off keeps them running through the partition, the leader stops the duplicates on merge
+     */
+    public void setStopOnMinority(boolean stopOnMinority) {
+        this.stopOnMinority = stopOnMinority;
+    }
+
+    /**
+     * API
+     * Ignore state if the RAFT log already has a state. A restarted node catches up from its log_dir,
+     * the leader resumes the payloads it ran before, see {@link #setPersistAssignment}
      *
      * @param cluster Name to connection
      * @param state   State (or Payload) for balancing in cluster
      */
     public void connect(String cluster, List<P> state) throws Exception {
-        jChannel.connect(cluster);
-        jChannel.getState(null, timeout);
-
-        synchronized (payload) {
-            if (payload.isEmpty()) {
-                payload.addAll(state);
+        initialState = List.copyOf(state);
+        if (persistAssignment) {
+            var previous = openAssignmentFile();
+            // The leader asks for it, only its committed log knows if the payloads are still ours
+            if (previous.node() != null && !previous.payloads().isEmpty()) {
+                remoteNodeMethods.getResumable()
+                        .set(previous);
             }
         }
+        jChannel.connect(cluster);
+    }
+
+    /**
+     * Reads what the previous run left and starts a new file
+     */
+    private AssignmentFile.Contents<P> openAssignmentFile() throws IOException {
+        RAFT raft = jChannel.getProtocolStack()
+                .findProtocol(RAFT.class);
+        // RAFT names its log only on connect, same directory and prefix
+        String prefix = raft.logPrefix() != null ? raft.logPrefix() : raft.raftId();
+        Path path = Path.of((String) raft.getValue("log_dir"), prefix + ".assignment");
+        var previous = AssignmentFile.read(path, codec);
+        assignmentFile = new AssignmentFile<>(path, codec, jChannel::getAddress);
+        assignmentFile.create();
+        remoteNodeMethods.setAssignmentFile(assignmentFile);
+        return previous;
     }
 
     @Override
     public void roleChanged(Role role) {
         log.info("role {}", role);
         if (Role.Leader == role) {
-            rebalance(jChannel.getView());
+            var view = jChannel.getView();
+            resumeAssignment(view.getMembers(), view);
+            resumeRebalance(view);
+            rebalanceExecutor.execute(this::replicateInitialState);
+            return;
+        }
+        // A former leader stops its rebalances, the new leader's calls fence any that are still in flight
+        rebalanceExecutor.cancel();
+    }
+
+    /**
+     * Restarts the payloads of restarted nodes where they ran, ahead of the next placement.
+     * A task, so a newer full rebalance does not drop it
+     */
+    private void resumeAssignment(List<Address> nodes, View view) {
+        if (!persistAssignment) {
+            return;
+        }
+        var task = new ResumeAssignment<>(stateMachine.getStore(), nodes, view.getMembers(),
+                raftHandle.currentTerm(), epochDispatcher());
+        rebalanceExecutor.execute(task);
+    }
+
+    /**
+     * A new leader continues the placement of the previous one if the RAFT log has it, else rebalances fully
+     */
+    private void resumeRebalance(View view) {
+        var store = stateMachine.getStore();
+        if (!store.hasAssignments()) {
+            rebalance(view);
+            return;
+        }
+        rebalanceExecutor.submit(new ResumeRebalance<>(store, view.getMembers(), rebalanceFactory, epochDispatcher()));
+    }
+
+    /**
+     * Start and stop calls carry the RAFT term as epoch, so nodes reject them once a newer leader called
+     */
+    private RemoteNodeMethodDispatcher<P> epochDispatcher() {
+        long term = raftHandle.currentTerm();
+        var dispatcher = epochDispatcher;
+        if (dispatcher == null || dispatcher.getEpoch() != term) {
+            dispatcher = remoteNodeMethodDispatcher.withEpoch(term);
+            epochDispatcher = dispatcher;
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Nothing was ever applied, so this leader seeds the cluster with its initial state.
+     * Runs on the rebalance thread, RAFT sets the leader after notifying role listeners
+     */
+    private void replicateInitialState() {
+        if (raftHandle.lastApplied() > 0 || initialState.isEmpty()) {
+            return;
+        }
+        try {
+            List<Change<P>> changes = new ArrayList<>(initialState.size());
+            initialState.forEach(p -> changes.add(Change.add(p)));
+            replicate(changes);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applied on every node, the leader places only the changed payloads
+     */
+    private void onStateChange(List<P> added, List<P> removed) {
+        var view = jChannel.getView();
+        if (view != null && raftHandle.isLeader()) {
+            var nodes = view.getMembers();
+            var payloads = stateMachine.getPayloads();
+            var rebalance = rebalanceFactory.create(added, removed, payloads, nodes, epochDispatcher());
+            rebalanceExecutor.submit(rebalance);
         }
     }
 
     @Override
     public void viewAccepted(View view) {
         log.info("view {}", view);
-        if (payload.isEmpty()) {
+        View previous = this.view;
+        this.view = view;
+        if (stateMachine.isEmpty()) {
             return;
         }
         if (raftHandle.isLeader()) {
-            rebalance(view);
+            if (view instanceof MergeView) {
+                mergeRebalance(view);
+            } else {
+                var joined = View.newMembers(previous, view);
+                if (!joined.isEmpty()) {
+                    resumeAssignment(joined, view);
+                }
+                rebalance(view);
+            }
             return;
         }
-        if (!canOperate(view)) {
-            remoteNodeMethods.notifyStopListeners();
+        if (!canOperate(view) && stopOnMinority) {
+            try {
+                remoteNodeMethods.notifyStopListeners();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    /**
+     * A healed partition keeps what every subgroup runs and stops only the duplicates
+     */
+    private void mergeRebalance(View view) {
+        var rebalance = new MergeRebalance<>(stateMachine.getStore(), view.getMembers(), epochDispatcher());
+        rebalanceExecutor.submit(rebalance);
+    }
+
     private boolean canOperate(View view) {
         return getSize(view) >= getMinSize();
     }
@@ -168,65 +523,117 @@ public class Node<P> implements Receiver, RoleChange, Closeable {
      */
     private void rebalance(View view) {
         var nodes = view.getMembers();
-        var rebalance = rebalanceFactory.create(payload, nodes, remoteNodeMethodDispatcher);
+        var payloads = stateMachine.getPayloads();
+        var rebalance = rebalanceFactory.create(payloads, nodes, epochDispatcher());
         rebalanceExecutor.submit(rebalance);
     }
 
-    @Override
-    public void getState(OutputStream output) throws Exception {
-        synchronized (payload) {
-            Util.objectToStream(payload, new DataOutputStream(output));
-        }
-    }
-
-    @Override
-    public void setState(InputStream input) throws Exception {
-        synchronized (payload) {
-            List<P> fromStream = Util.objectFromStream(new DataInputStream(input));
-            payload.clear();
-            payload.addAll(fromStream);
-        }
-    }
-
     /**
      * API
-     * Replicate state on all nodes, then run rebalance
+     * Replicate the difference to the given state through the RAFT log.
+     * The leader rebalances once the change is applied
      */
     public void setState(List<P> state) throws Exception {
         var view = jChannel.getView();
         if (canOperate(view)) {
-            synchronized (payload) {
-                payload.clear();
-                payload.addAll(state);
+            var current = stateMachine.getPayloads();
+            Set<P> target = new HashSet<>(state);
+            Set<P> existing = new HashSet<>(current);
+
+            List<Change<P>> changes = new ArrayList<>();
+            for (P p : current) {
+                if (!target.contains(p)) {
+                    changes.add(Change.remove(p));
+                }
             }
-            var local = jChannel.address();
-            remoteNodeMethodDispatcher.callRemoteGetState(local);
-            rebalance(view);
+            for (P p : state) {
+                if (!existing.contains(p)) {
+                    changes.add(Change.add(p));
+                }
+            }
+            replicate(changes);
         }
     }
 
     /**
      * API
-     * Replicate change
+     * Replicate an added payload, concurrent calls share one RAFT round
+     */
+    public void add(P p) throws Exception {
+        addAll(List.of(p));
+    }
+
+    /**
+     * API
      */
-    private void addReplica(P p) {
+    public void addAll(Collection<P> payloads) throws Exception {
+        List<Change<P>> changes = new ArrayList<>(payloads.size());
+        payloads.forEach(p -> changes.add(Change.add(p)));
+        replicateIfCanOperate(changes);
+    }
+
+    /**
+     * API
+     * Replicate a removed payload, concurrent calls share one RAFT round
+     */
+    public void remove(P p) throws Exception {
+        removeAll(List.of(p));
+    }
+
+    /**
+     * API
+     */
+    public void removeAll(Collection<P> payloads) throws Exception {
+        List<Change<P>> changes = new ArrayList<>(payloads.size());
+        payloads.forEach(p -> changes.add(Change.remove(p)));
+        replicateIfCanOperate(changes);
+    }
+
+    /**
+     * API
+     *
+     * @return Node running the payload as last dispatched by this node, null if unknown.
+     * Only the leader dispatches
+     */
+    public Address getOwner(P p) {
+        return stateMachine.getStore()
+                .getOwner(p);
+    }
+
+    private void replicateIfCanOperate(List<Change<P>> changes) throws Exception {
         var view = jChannel.getView();
         if (canOperate(view)) {
-            synchronized (payload) {
-                payload.add(p);
-
-                // TODO
-            }
+            replicate(changes);
         }
     }
 
+    private void replicate(List<Change<P>> changes) throws Exception {
+        groupCommit.submit(changes)
+                .get(timeout, MILLISECONDS);
+    }
+
     /**
      * API
      */
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (loadMonitor != null) {
+                loadMonitor.close();
+            }
+        }
+        groupCommit.close();
         rebalanceExecutor.shutdown();
         rpcDispatcher.close();
         jChannel.close();
+        listenerExecutor.close();
+        if (assignmentFile != null) {
+            assignmentFile.close();
+        }
+        try {
+            JmxConfigurator.unregister(metrics, Util.getMBeanServer(), metricsObjectName());
+        } catch (Exception e) {
+            log.debug("Metrics not unregistered from JMX: {}", e.toString());
+        }
     }
 }
\ No newline at end of file
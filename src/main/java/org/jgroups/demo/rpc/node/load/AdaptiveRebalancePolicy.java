@@ -0,0 +1,164 @@
+package org.jgroups.demo.rpc.node.load;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.weighted.NodeWeight;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which payloads move from hot to cold nodes.
+ * Load of a node is the rate of its payloads per {@link NodeWeight}, nothing moves until nodes report
+ * rates with Node.recordWork. A node with Start or Stop listeners still queued, e.g. from the previous
+ * round, takes no payloads.
+ * Migration starts when the hottest node exceeds the mean by highWatermark and goes on, at most maxMoves
+ * per round and one round per cooldown, until it is below lowWatermark
+ */
+@Slf4j
+public class AdaptiveRebalancePolicy {
+
+    @Getter
+    private final double highWatermark;
+    @Getter
+    private final double lowWatermark;
+    @Getter
+    private final int maxMoves;
+    @Getter
+    private final long cooldown;
+
+    private boolean active;
+    private long lastMove;
+
+    public AdaptiveRebalancePolicy() {
+        this(1.5, 1.2, 10, 30000);
+    }
+
+    /**
+     * @param highWatermark Hottest load / mean load that starts migration
+     * @param lowWatermark  Hottest load / mean load that ends migration, below highWatermark
+     * @param maxMoves      Payloads moved per round
+     * @param cooldown      Millis between rounds
+     */
+    public AdaptiveRebalancePolicy(double highWatermark, double lowWatermark, int maxMoves, long cooldown) {
+        if (lowWatermark < 1 || highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("Need 1 <= lowWatermark <= highWatermark: " + lowWatermark + ", " + highWatermark);
+        }
+        if (maxMoves < 1) {
+            throw new IllegalArgumentException("maxMoves must be positive: " + maxMoves);
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.maxMoves = maxMoves;
+        this.cooldown = cooldown;
+        this.lastMove = System.nanoTime() - cooldown * 1_000_000;
+    }
+
+    /**
+     * @param samples Load of every node
+     * @return Payloads to move, empty if balanced enough or cooling down
+     */
+    public synchronized <P> List<Migration<P>> plan(Map<Address, LoadSample<P>> samples) {
+        if (samples.size() < 2 || System.nanoTime() - lastMove < cooldown * 1_000_000) {
+            return List.of();
+        }
+        Map<Address, Map<P, Double>> rates = new LinkedHashMap<>();
+        samples.forEach((node, sample) -> rates.put(node, new HashMap<>(sample.rates())));
+        Map<Address, Double> loads = new LinkedHashMap<>();
+        double total = 0;
+        long weights = 0;
+        for (var entry : rates.entrySet()) {
+            double load = 0;
+            for (double rate : entry.getValue().values()) {
+                load += rate;
+            }
+            loads.put(entry.getKey(), load);
+            total += load;
+            weights += NodeWeight.of(entry.getKey());
+        }
+        if (total <= 0) {
+            active = false;
+            return List.of();
+        }
+        double mean = total / weights;
+
+        double ratio = hottest(loads) / mean;
+        if (ratio < (active ? lowWatermark : highWatermark)) {
+            active = false;
+            return List.of();
+        }
+        active = true;
+
+        List<Migration<P>> migrations = new ArrayList<>();
+        while (migrations.size() < maxMoves && perWeight(loads, hot(loads)) / mean >= lowWatermark) {
+            Address hot = hot(loads);
+            Address cold = cold(loads, samples);
+            if (cold == null) {
+                break;
+            }
+
+            // Largest payload that leaves the cold node at most as loaded as the hot one, so nothing moves back
+            P best = null;
+            double bestRate = 0;
+            for (var entry : rates.get(hot).entrySet()) {
+                double rate = entry.getValue();
+                if (rate > bestRate
+                        && (loads.get(cold) + rate) / NodeWeight.of(cold) <= (loads.get(hot) - rate) / NodeWeight.of(hot)) {
+                    best = entry.getKey();
+                    bestRate = rate;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            migrations.add(new Migration<>(best, hot, cold));
+            rates.get(hot).remove(best);
+            rates.get(cold).put(best, bestRate);
+            loads.merge(hot, -bestRate, Double::sum);
+            loads.merge(cold, bestRate, Double::sum);
+        }
+        if (!migrations.isEmpty()) {
+            lastMove = System.nanoTime();
+            log.info("Load imbalance {}, migrating {} payloads", String.format("%.2f", ratio), migrations.size());
+        }
+        return migrations;
+    }
+
+    private static double hottest(Map<Address, Double> loads) {
+        return perWeight(loads, hot(loads));
+    }
+
+    private static Address hot(Map<Address, Double> loads) {
+        Address hot = null;
+        for (Address node : loads.keySet()) {
+            if (hot == null || perWeight(loads, node) > perWeight(loads, hot)) {
+                hot = node;
+            }
+        }
+        return hot;
+    }
+
+    /**
+     * @return Least loaded node without queued listeners, null if all are busy
+     */
+    private static Address cold(Map<Address, Double> loads, Map<Address, ? extends LoadSample<?>> samples) {
+        Address cold = null;
+        for (Address node : loads.keySet()) {
+            if (samples.get(node).queueDepth() > 0) {
+                continue;
+            }
+            if (cold == null || perWeight(loads, node) < perWeight(loads, cold)) {
+                cold = node;
+            }
+        }
+        return cold;
+    }
+
+    private static double perWeight(Map<Address, Double> loads, Address node) {
+        return loads.get(node) / NodeWeight.of(node);
+    }
+}
@@ -0,0 +1,49 @@
+package org.jgroups.demo.rpc.node.load;
+
+import org.jgroups.demo.executor.ListenerExecutor;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Work done per payload on one node, reset by every sample
+ * @param <P>
+ */
+public class LoadMeter<P> {
+
+    private final Map<P, LongAdder> work = new ConcurrentHashMap<>();
+    private long lastSample = System.nanoTime();
+
+    /**
+     * @param units Work done for the payload, for example messages processed
+     */
+    public void record(P payload, long units) {
+        work.computeIfAbsent(payload, p -> new LongAdder())
+                .add(units);
+    }
+
+    /**
+     * Load since the previous sample
+     *
+     * @param running Payloads running on this node, work of other payloads is dropped
+     */
+    public synchronized LoadSample<P> sample(Collection<P> running, ListenerExecutor listenerExecutor) {
+        long now = System.nanoTime();
+        long period = Math.max(1, now - lastSample);
+
+        Map<P, Double> rates = new LinkedHashMap<>(running.size() * 2);
+        for (P p : running) {
+            var units = work.get(p);
+            rates.put(p, units != null ? units.sumThenReset() * 1e9 / period : 0.0);
+        }
+        work.keySet()
+                .retainAll(rates.keySet());
+
+        var sample = new LoadSample<>(period, listenerExecutor.getQueueDepth(), rates);
+        lastSample = now;
+        return sample;
+    }
+}
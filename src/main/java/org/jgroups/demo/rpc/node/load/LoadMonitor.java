@@ -0,0 +1,93 @@
+package org.jgroups.demo.rpc.node.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.MigrateRebalance;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceExecutor;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.store.PayloadStore;
+import org.jgroups.util.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Samples the load of all nodes while this node is leader and no rebalance is running,
+ * and submits the migrations of the policy to the RebalanceExecutor
+ * @param <P>
+ */
+@Slf4j
+public class LoadMonitor<P> implements Closeable {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("load-monitor-", true));
+
+    private final AdaptiveRebalancePolicy policy;
+    private final RebalanceExecutor rebalanceExecutor;
+    private final Supplier<RemoteNodeMethodDispatcher<P>> remoteNodeMethodDispatcher;
+    private final PayloadStore<P> sharedState;
+    private final Supplier<List<Address>> members;
+    private final BooleanSupplier leader;
+
+    /**
+     * @param remoteNodeMethodDispatcher Dispatcher of the current leader epoch
+     * @param members                    Current view
+     * @param leader  true while this node is RAFT leader
+     */
+    public LoadMonitor(AdaptiveRebalancePolicy policy,
+                       RebalanceExecutor rebalanceExecutor,
+                       Supplier<RemoteNodeMethodDispatcher<P>> remoteNodeMethodDispatcher,
+                       PayloadStore<P> sharedState,
+                       Supplier<List<Address>> members,
+                       BooleanSupplier leader
+    ) {
+        this.policy = policy;
+        this.rebalanceExecutor = rebalanceExecutor;
+        this.remoteNodeMethodDispatcher = remoteNodeMethodDispatcher;
+        this.sharedState = sharedState;
+        this.members = members;
+        this.leader = leader;
+    }
+
+    /**
+     * @param interval Millis between samples
+     */
+    public void start(long interval) {
+        scheduler.scheduleWithFixedDelay(this::sample, interval, interval, MILLISECONDS);
+    }
+
+    private void sample() {
+        if (!leader.getAsBoolean() || !rebalanceExecutor.isIdle()) {
+            return;
+        }
+        try {
+            var dispatcher = remoteNodeMethodDispatcher.get();
+            var samples = await(dispatcher.callRemoteSampleLoadAsync(members.get()));
+            if (!samples.isComplete()) {
+                // Moves based on part of the cluster could make it worse
+                log.debug("Load sample incomplete, missing {}", samples.failedNodes());
+                return;
+            }
+            List<Migration<P>> migrations = policy.plan(samples.results());
+            if (!migrations.isEmpty() && leader.getAsBoolean()) {
+                rebalanceExecutor.submit(new MigrateRebalance<>(migrations, sharedState, dispatcher));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Load sample failed: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,56 @@
+package org.jgroups.demo.rpc.node.load;
+
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load of one node over one sampling period
+ *
+ * @param periodNanos Length of the period
+ * @param queueDepth  Start and Stop listeners queued or running at the end of the period
+ * @param rates       Work units per second of every running payload, see Node.recordWork
+ * @param <P>
+ */
+public record LoadSample<P>(long periodNanos, int queueDepth, Map<P, Double> rates) {
+
+    /**
+     * @return Work units per second of all payloads
+     */
+    public double rate() {
+        double rate = 0;
+        for (double r : rates.values()) {
+            rate += r;
+        }
+        return rate;
+    }
+
+    public byte[] toBytes(PayloadCodec<P> codec) throws IOException {
+        var out = new ByteArrayDataOutputStream(Long.BYTES + Integer.BYTES * 2 + rates.size() * 40);
+        out.writeLong(periodNanos);
+        out.writeInt(queueDepth);
+        out.writeInt(rates.size());
+        for (var entry : rates.entrySet()) {
+            codec.write(entry.getKey(), out);
+            out.writeDouble(entry.getValue());
+        }
+        return out.getBuffer()
+                .getBytes();
+    }
+
+    public static <P> LoadSample<P> fromBytes(byte[] bytes, PayloadCodec<P> codec) throws IOException {
+        var in = new ByteArrayDataInputStream(bytes);
+        long periodNanos = in.readLong();
+        int queueDepth = in.readInt();
+        int size = in.readInt();
+        Map<P, Double> rates = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            rates.put(codec.read(in), in.readDouble());
+        }
+        return new LoadSample<>(periodNanos, queueDepth, rates);
+    }
+}
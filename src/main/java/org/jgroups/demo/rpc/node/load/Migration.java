@@ -0,0 +1,10 @@
+package org.jgroups.demo.rpc.node.load;
+
+import org.jgroups.Address;
+
+/**
+ * Move of one payload from a hot to a cold node
+ * @param <P>
+ */
+public record Migration<P>(P payload, Address from, Address to) {
+}
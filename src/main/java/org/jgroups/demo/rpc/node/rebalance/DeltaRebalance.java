@@ -0,0 +1,84 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Incremental rebalance for a change of the shared state.
+ * Stops removed payloads wherever they run and places only the added ones
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DeltaRebalance<P> implements Rebalance {
+
+    private final List<P> added;
+    private final List<P> removed;
+    private final List<Address> nodes;
+    private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+    private final Function<P, Address> placement;
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!removed.isEmpty()) {
+                Map<Address, List<P>> stops = new LinkedHashMap<>();
+                for (Address node : nodes) {
+                    stops.put(node, removed);
+                }
+                await(remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(stops)).failures()
+                        .forEach((node, e) -> log.warn("Delta stop failed on {}: {}", node, e.toString()));
+            }
+
+            Map<Address, List<P>> starts = new LinkedHashMap<>();
+            // Without nodes there is no one to start the added payloads on
+            for (P p : nodes.isEmpty() ? List.<P>of() : added) {
+                starts.computeIfAbsent(placement.apply(p), node -> new ArrayList<>())
+                        .add(p);
+            }
+            await(remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(starts)).failures()
+                    .forEach((node, e) -> log.warn("Delta start failed on {}: {}", node, e.toString()));
+            log.info("Delta rebalance: stop {}, start {}", removed.size(), added.size());
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Round robin over the nodes, continues where the previous delta stopped
+     */
+    public static <P> Function<P, Address> roundRobin(List<Address> nodes, int offset) {
+        if (nodes.isEmpty()) {
+            return p -> null;
+        }
+        int[] n = {Math.floorMod(offset, nodes.size())};
+        return p -> {
+            Address node = nodes.get(n[0]++);
+            if (n[0] == nodes.size()) {
+                n[0] = 0;
+            }
+            return node;
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.FanOut;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Rebalance that compares current ownership with target ownership
+ * and stops / starts only the payloads that move.
+ * Nodes are called in parallel, a node that fails does not hold back the others.
+ * Nothing moves unless every node reported what it runs, the next view change retries.
+ * Moved payloads are handed over as the {@link HandoffPolicy} says, break before make by default.
+ * Payloads must implement equals and hashCode
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public abstract class DiffRebalance<P> implements Rebalance {
+
+    protected final List<P> payloads;
+    protected final List<Address> nodes;
+    protected final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+    @Setter
+    private HandoffPolicy<P> handoffPolicy = HandoffPolicy.breakBeforeMake();
+    /**
+     * Runs once every stop and start of the placement succeeded, not if the rebalance was skipped,
+     * cancelled, fenced or a node failed
+     */
+    @Setter
+    private Runnable onPlaced = () -> {
+    };
+
+    @Override
+    public void run() {
+        try {
+            var running = await(remoteNodeMethodDispatcher.callRemoteGetRunningPayloadsAsync(nodes));
+            running.failures()
+                    .forEach((node, e) -> log.warn("No running payloads from {}: {}", node, e.toString()));
+            if (!running.isComplete()) {
+                // Such a node would look empty, its payloads would start a second time elsewhere
+                log.warn("Rebalance skipped, running payloads of {} unknown", running.failedNodes());
+                return;
+            }
+            var current = running.results();
+            var target = place(current);
+
+            var stops = minus(current, target);
+            var starts = minus(target, current);
+            log.info("Rebalance moves: stop {}, start {} of {}", count(stops), count(starts), payloads.size());
+
+            // Payloads that run nowhere start right away, and so do moved payloads handed off make before break
+            Set<P> targets = new HashSet<>();
+            starts.values().forEach(targets::addAll);
+            Set<P> moved = new HashSet<>();
+            Set<P> handoff = new HashSet<>();
+            for (List<P> list : stops.values()) {
+                for (P p : list) {
+                    moved.add(p);
+                    if (targets.contains(p) && handoffPolicy.makeBeforeBreak(p)) {
+                        handoff.add(p);
+                    }
+                }
+            }
+            var made = remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(
+                    filter(starts, p -> !moved.contains(p) || handoff.contains(p)));
+            var stopped = await(remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(
+                    filter(stops, p -> !handoff.contains(p))));
+
+            // A payload that might still run on its old node is not started twice
+            Set<P> unstopped = new HashSet<>();
+            stopped.failures()
+                    .keySet()
+                    .forEach(node -> unstopped.addAll(stops.get(node)));
+            var handedOver = remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(
+                    filter(starts, p -> moved.contains(p) && !handoff.contains(p) && !unstopped.contains(p)));
+
+            // The old node stops a handed off payload only once the new node confirmed the start
+            var started = await(made);
+            Set<P> unstarted = new HashSet<>();
+            started.failures()
+                    .keySet()
+                    .forEach(node -> unstarted.addAll(starts.get(node)));
+            var released = remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(
+                    filter(stops, p -> handoff.contains(p) && !unstarted.contains(p)));
+
+            var startedOver = await(handedOver);
+            var stoppedOver = await(released);
+            logFailures("stop", stopped);
+            logFailures("start", started);
+            logFailures("start", startedOver);
+            logFailures("stop", stoppedOver);
+            if (stopped.isComplete() && started.isComplete() && startedOver.isComplete() && stoppedOver.isComplete()) {
+                onPlaced.run();
+            }
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Target ownership
+     *
+     * @param current Payloads running per node
+     * @return Payloads per node, every payload exactly once
+     */
+    protected abstract Map<Address, List<P>> place(Map<Address, List<P>> current);
+
+    /**
+     * @return Per node payloads of a that are not in b for the same node
+     */
+    static <P> Map<Address, List<P>> minus(Map<Address, List<P>> a, Map<Address, List<P>> b) {
+        Map<Address, List<P>> result = new LinkedHashMap<>();
+        for (var entry : a.entrySet()) {
+            Set<P> other = new HashSet<>(b.getOrDefault(entry.getKey(), List.of()));
+            List<P> diff = new ArrayList<>();
+            for (P p : entry.getValue()) {
+                if (!other.contains(p)) {
+                    diff.add(p);
+                }
+            }
+            result.put(entry.getKey(), diff);
+        }
+        return result;
+    }
+
+    private static <P> Map<Address, List<P>> filter(Map<Address, List<P>> assignment, Predicate<P> predicate) {
+        Map<Address, List<P>> result = new LinkedHashMap<>();
+        assignment.forEach((node, list) -> result.put(node, list.stream()
+                .filter(predicate)
+                .toList()));
+        return result;
+    }
+
+    private static void logFailures(String action, FanOut.Result<?> result) {
+        result.failures()
+                .forEach((node, e) -> log.warn("Rebalance {} failed on {}: {}", action, node, e.toString()));
+    }
+
+    private static <P> int count(Map<Address, List<P>> assignment) {
+        int count = 0;
+        for (List<P> list : assignment.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,44 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+/**
+ * How a payload moves between nodes.
+ * Break before make stops it on the old node before it starts on the new one: never twice, briefly nowhere.
+ * Make before break starts it on the new node, and stops it on the old one once the start returned:
+ * briefly twice, never nowhere
+ * @param <P>
+ */
+@FunctionalInterface
+public interface HandoffPolicy<P> {
+
+    HandoffPolicy<?> BREAK_BEFORE_MAKE = p -> false;
+    HandoffPolicy<?> MAKE_BEFORE_BREAK = p -> true;
+
+    /**
+     * @return true to start the payload on its new node before it stops on the old one
+     */
+    boolean makeBeforeBreak(P payload);
+
+    @SuppressWarnings("unchecked")
+    static <P> HandoffPolicy<P> breakBeforeMake() {
+        return (HandoffPolicy<P>) BREAK_BEFORE_MAKE;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <P> HandoffPolicy<P> makeBeforeBreak() {
+        return (HandoffPolicy<P>) MAKE_BEFORE_BREAK;
+    }
+
+    /**
+     * Make before break for payloads of these types, break before make for the rest
+     */
+    static <P> HandoffPolicy<P> makeBeforeBreak(Class<?>... types) {
+        return p -> {
+            for (Class<?> type : types) {
+                if (type.isInstance(p)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
@@ -0,0 +1,178 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+import org.jgroups.demo.store.PayloadStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Rebalance of the leader after a partition healed. Asks every node of the merged view what it runs
+ * instead of starting over: a payload running on one node stays there, a payload running on several
+ * nodes stays on the least loaded of them (the replicated owner on a tie) and is stopped on the others,
+ * payloads the shared state no longer has are stopped.
+ * Payloads of nodes that did not answer stay where they are, a failed stop keeps its payload from starting elsewhere.
+ * Payloads running nowhere and the surplus of the fullest nodes go to the emptiest nodes,
+ * typically the ones coming back from the minority, until the counts differ by at most one
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class MergeRebalance<P> implements Rebalance {
+
+    private final PayloadStore<P> sharedState;
+    private final List<Address> nodes;
+    private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+
+    @Override
+    public void run() {
+        try {
+            var running = await(remoteNodeMethodDispatcher.callRemoteGetRunningPayloadsAsync(nodes, false));
+            running.failures()
+                    .forEach((node, e) -> log.warn("No running payloads from {}: {}", node, e.toString()));
+            Set<Address> unknown = running.failures().keySet();
+
+            Map<P, List<Address>> runningOn = new HashMap<>();
+            Map<Address, List<P>> stops = new LinkedHashMap<>();
+            // Payloads stay only on nodes that answered
+            Map<Address, List<P>> kept = new LinkedHashMap<>();
+            running.results().forEach((node, payloads) -> {
+                kept.put(node, new ArrayList<>());
+                for (P p : payloads) {
+                    if (sharedState.contains(p)) {
+                        runningOn.computeIfAbsent(p, n -> new ArrayList<>(1))
+                                .add(node);
+                    } else {
+                        add(stops, node, p);
+                    }
+                }
+            });
+            int stale = count(stops);
+
+            List<P> duplicates = new ArrayList<>();
+            List<P> orphans = new ArrayList<>();
+            List<P> payloads = sharedState.snapshot();
+            for (P p : payloads) {
+                List<Address> on = runningOn.get(p);
+                if (on == null) {
+                    // A node that did not answer may still run it
+                    if (!unknown.contains(sharedState.getOwner(p))) {
+                        orphans.add(p);
+                    }
+                } else if (on.size() == 1) {
+                    add(kept, on.get(0), p);
+                } else {
+                    duplicates.add(p);
+                }
+            }
+            // After the unique ones, so each duplicate stays on the node that is least loaded by then
+            for (P p : duplicates) {
+                Address owner = sharedState.getOwner(p);
+                Address winner = null;
+                for (Address node : runningOn.get(p)) {
+                    int load = kept.get(node).size();
+                    if (winner == null || load < kept.get(winner).size()
+                            || load == kept.get(winner).size() && node.equals(owner)) {
+                        winner = node;
+                    }
+                }
+                add(kept, winner, p);
+                for (Address node : runningOn.get(p)) {
+                    if (!node.equals(winner)) {
+                        add(stops, node, p);
+                    }
+                }
+            }
+            int duplicated = count(stops) - stale;
+
+            Map<Address, List<P>> starts = level(kept, orphans, stops);
+            int moved = count(starts) - orphans.size();
+
+            var stopped = await(remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(stops));
+            // A payload that might still run on its old node is not started twice, the rest goes on
+            Set<P> unstopped = new HashSet<>();
+            stopped.failures()
+                    .forEach((node, e) -> {
+                        log.warn("Merge stop failed on {}: {}", node, e.toString());
+                        unstopped.addAll(stops.get(node));
+                    });
+            starts.values()
+                    .forEach(list -> list.removeIf(unstopped::contains));
+            kept.forEach(remoteNodeMethodDispatcher::adopt);
+            await(remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(starts)).failures()
+                    .forEach((node, e) -> log.warn("Merge start failed on {}: {}", node, e.toString()));
+            log.info("Merge rebalance: {} kept, {} duplicates stopped, {} stale stopped, {} orphans started, {} moved",
+                    count(kept), duplicated, stale, orphans.size(), moved);
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Takes the payloads the fullest nodes run above their share off them
+     * and hands them with the orphans to the nodes below their share
+     *
+     * @param kept    Payloads that stay per node, the moved ones are removed
+     * @param orphans Payloads running nowhere
+     * @param stops   Payloads to stop per node, the moved ones are added
+     * @return Payloads to start per node
+     */
+    private Map<Address, List<P>> level(Map<Address, List<P>> kept, List<P> orphans, Map<Address, List<P>> stops) {
+        Map<Address, List<P>> starts = new LinkedHashMap<>();
+        if (kept.isEmpty()) {
+            return starts;
+        }
+        int total = count(kept) + orphans.size();
+        List<Address> fullest = new ArrayList<>(kept.keySet());
+        fullest.sort(Comparator.comparing((Address node) -> kept.get(node).size()).reversed());
+
+        Map<Address, Integer> share = new HashMap<>();
+        List<P> moving = new ArrayList<>(orphans);
+        for (int i = 0; i < fullest.size(); i++) {
+            Address node = fullest.get(i);
+            share.put(node, total / fullest.size() + (i < total % fullest.size() ? 1 : 0));
+            List<P> running = kept.get(node);
+            while (running.size() > share.get(node)) {
+                P p = running.remove(running.size() - 1);
+                add(stops, node, p);
+                moving.add(p);
+            }
+        }
+        var next = moving.iterator();
+        for (Address node : fullest) {
+            for (int i = kept.get(node).size(); i < share.get(node) && next.hasNext(); i++) {
+                add(starts, node, next.next());
+            }
+        }
+        return starts;
+    }
+
+    private void add(Map<Address, List<P>> assignment, Address node, P p) {
+        assignment.computeIfAbsent(node, n -> new ArrayList<>())
+                .add(p);
+    }
+
+    private int count(Map<Address, List<P>> assignment) {
+        return assignment.values()
+                .stream()
+                .mapToInt(List::size)
+                .sum();
+    }
+}
@@ -0,0 +1,78 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.load.Migration;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+import org.jgroups.demo.store.PayloadStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Incremental rebalance that moves single payloads between nodes.
+ * A payload starts on its new node only after it stopped on the old one,
+ * migrations whose payload no longer runs on the old node are dropped,
+ * payloads removed from the shared state in the meantime do not start again
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class MigrateRebalance<P> implements Rebalance {
+
+    private final List<Migration<P>> migrations;
+    private final PayloadStore<P> sharedState;
+    private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Planned from a sample, the payload may have moved or gone since
+            List<Migration<P>> current = new ArrayList<>();
+            Map<Address, List<P>> stops = new LinkedHashMap<>();
+            for (Migration<P> m : migrations) {
+                if (m.from().equals(sharedState.getOwner(m.payload()))) {
+                    current.add(m);
+                    stops.computeIfAbsent(m.from(), node -> new ArrayList<>())
+                            .add(m.payload());
+                }
+            }
+            var stopped = await(remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(stops));
+            stopped.failures()
+                    .forEach((node, e) -> log.warn("Migration stop failed on {}: {}", node, e.toString()));
+
+            Set<P> released = new HashSet<>();
+            stopped.results().values().forEach(released::addAll);
+            Map<Address, List<P>> starts = new LinkedHashMap<>();
+            for (Migration<P> m : current) {
+                if (released.contains(m.payload()) && sharedState.contains(m.payload())) {
+                    starts.computeIfAbsent(m.to(), node -> new ArrayList<>())
+                            .add(m.payload());
+                }
+            }
+            await(remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(starts)).failures()
+                    .forEach((node, e) -> log.warn("Migration start failed on {}: {}", node, e.toString()));
+            log.info("Migrated {} of {} payloads", starts.values().stream().mapToInt(List::size).sum(), migrations.size());
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
@@ -1,4 +1,14 @@
 package org.jgroups.demo.rpc.node.rebalance;
 
 public interface Rebalance extends Runnable {
+
+    /**
+     * A full rebalance supersedes every rebalance submitted before it,
+     * an incremental one must run after them
+     *
+     * @return true if only a delta of the shared state is placed
+     */
+    default boolean isIncremental() {
+        return false;
+    }
 }
@@ -2,22 +2,197 @@ package org.jgroups.demo.rpc.node.rebalance;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jgroups.demo.metrics.LatencyHistogram;
 import org.jgroups.util.DefaultThreadFactory;
 
-import java.util.concurrent.ExecutorService;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs rebalances one at a time.
+ * A full rebalance drops all pending ones, cancels the in-flight one
+ * and waits for a quiet period, so a burst of view changes costs a single rebalance.
+ * Tasks passed to {@link #execute} are never dropped or interrupted
+ */
 @Slf4j
-@RequiredArgsConstructor
 public class RebalanceExecutor {
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor(
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(
             new DefaultThreadFactory("rebalance-thread-", false));
 
-    public void submit(Rebalance rebalance) {
-        executorService.submit(rebalance);
+    private final long quietPeriod;
+
+    private final Deque<Rebalance> pending = new ArrayDeque<>();
+    private ScheduledFuture<?> scheduled;
+    private Rebalance current;
+    private Thread worker;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+
+    public RebalanceExecutor() {
+        this(200);
+    }
+
+    /**
+     * @param quietPeriod Millis without a new full rebalance before the latest one runs
+     */
+    public RebalanceExecutor(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    public synchronized void submit(Rebalance rebalance) {
+        submitted.increment();
+        if (rebalance.isIncremental()) {
+            enqueue(rebalance);
+            return;
+        }
+        dropRebalances();
+        pending.add(rebalance);
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        scheduled = executorService.schedule(this::runNext, quietPeriod, MILLISECONDS);
+    }
+
+    /**
+     * Runs a task on the rebalance thread, in order with incremental rebalances
+     */
+    public synchronized void execute(Runnable task) {
+        enqueue(new Task(task));
+    }
+
+    /**
+     * Drops the pending rebalances and interrupts the running one, tasks stay
+     */
+    private void dropRebalances() {
+        int size = pending.size();
+        pending.removeIf(next -> !(next instanceof Task));
+        coalesced.add(size - pending.size());
+        if (current != null && !(current instanceof Task)) {
+            cancelled.increment();
+            worker.interrupt();
+        }
+    }
+
+    private void enqueue(Rebalance rebalance) {
+        pending.add(rebalance);
+        if (scheduled == null) {
+            scheduled = executorService.schedule(this::runNext, 0, MILLISECONDS);
+        }
+    }
+
+    private void runNext() {
+        Rebalance next;
+        synchronized (this) {
+            scheduled = null;
+            next = pending.poll();
+            if (next == null) {
+                return;
+            }
+            current = next;
+            worker = Thread.currentThread();
+        }
+        // Clears an interrupt meant for the previous rebalance
+        Thread.interrupted();
+        long start = System.nanoTime();
+        try {
+            next.run();
+            if (!Thread.currentThread().isInterrupted()) {
+                executed.increment();
+                runTime.recordSince(start);
+            }
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                current = null;
+                worker = null;
+                if (!pending.isEmpty() && scheduled == null) {
+                    scheduled = executorService.schedule(this::runNext, 0, MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops pending rebalances and interrupts the running one, e.g. when this node is no longer leader
+     */
+    public synchronized void cancel() {
+        dropRebalances();
+        if (scheduled != null && pending.isEmpty()) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    /**
+     * @return true if nothing runs and nothing is pending
+     */
+    public synchronized boolean isIdle() {
+        return current == null && pending.isEmpty();
+    }
+
+    /**
+     * @return Rebalances submitted
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return Rebalances that ran to the end
+     */
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /**
+     * @return Pending rebalances dropped for a newer full rebalance
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return In-flight rebalances interrupted by a newer full rebalance
+     */
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return Run time of rebalances that ran to the end
+     */
+    public LatencyHistogram getRunTime() {
+        return runTime;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Task implements Rebalance {
+        private final Runnable task;
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public boolean isIncremental() {
+            return true;
+        }
     }
 
-    public void shutdown() {
+    public synchronized void shutdown() {
+        pending.clear();
         executorService.shutdown();
     }
 }
@@ -10,5 +10,20 @@ public interface RebalanceFactory<P> {
     Rebalance create(List<P> payloads,
                      List<Address> nodes,
                      RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher);
+
+    /**
+     * Rebalance for a change of the shared state. Full rebalance unless the factory can place a delta
+     *
+     * @param added    Payloads added to the shared state
+     * @param removed  Payloads removed from the shared state
+     * @param payloads Whole shared state after the change
+     */
+    default Rebalance create(List<P> added,
+                             List<P> removed,
+                             List<P> payloads,
+                             List<Address> nodes,
+                             RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher) {
+        return create(payloads, nodes, remoteNodeMethodDispatcher);
+    }
 }
 
@@ -0,0 +1,100 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+import org.jgroups.demo.store.PayloadStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * Run by the leader before it places payloads for restarted nodes. Each node reports what its previous run
+ * left in its assignment file, the leader starts there the payloads its committed log still assigns
+ * to that previous address and that are not moving. Nothing else is resumed,
+ * e.g. payloads the leader moved while the node was down
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ResumeAssignment<P> implements Runnable {
+
+    private final PayloadStore<P> sharedState;
+    /**
+     * Nodes to ask, e.g. the ones that just joined
+     */
+    private final List<Address> nodes;
+    /**
+     * Members of the current view
+     */
+    private final List<Address> members;
+    /**
+     * Term of this leader, files of a newer one are ignored
+     */
+    private final long term;
+    private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+
+    @Override
+    public void run() {
+        try {
+            var resumable = await(remoteNodeMethodDispatcher.callRemoteGetResumablePayloadsAsync(nodes));
+            resumable.failures()
+                    .forEach((node, e) -> log.warn("No resumable payloads from {}: {}", node, e.toString()));
+
+            Set<Address> live = new HashSet<>(members);
+            Map<Address, List<P>> starts = new LinkedHashMap<>();
+            int reported = 0;
+            for (var entry : resumable.results().entrySet()) {
+                var previous = entry.getValue();
+                if (previous.node() == null) {
+                    continue;
+                }
+                reported += previous.payloads().size();
+                if (previous.epoch() > term) {
+                    log.warn("Assignment of {} has epoch {}, newer than term {}, not resumed",
+                            entry.getKey(), previous.epoch(), term);
+                    continue;
+                }
+                // A previous address still in the view runs its payloads itself
+                if (live.contains(previous.node())) {
+                    continue;
+                }
+                List<P> resumed = new ArrayList<>();
+                for (P p : previous.payloads()) {
+                    if (previous.node().equals(sharedState.getOwner(p)) && sharedState.getTarget(p) == null) {
+                        resumed.add(p);
+                    }
+                }
+                if (!resumed.isEmpty()) {
+                    starts.put(entry.getKey(), resumed);
+                }
+            }
+            if (starts.isEmpty()) {
+                return;
+            }
+            var started = await(remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(starts));
+            started.failures()
+                    .forEach((node, e) -> log.warn("Resume failed on {}: {}", node, e.toString()));
+            log.info("Resumed {} of {} payloads of restarted nodes", started.results()
+                    .keySet()
+                    .stream()
+                    .mapToInt(node -> starts.get(node).size())
+                    .sum(), reported);
+        } catch (InterruptedException e) {
+            log.info("Resume cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Resume fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.jgroups.demo.rpc.node.rebalance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
+import org.jgroups.demo.store.PayloadStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
+
+/**
+ * First rebalance of a new leader. Picks up the replicated placement instead of starting over:
+ * payloads running on live nodes stay, planned payloads whose target is live finish their move,
+ * payloads without a live owner or target are placed by the factory as a delta.
+ * Starts are idempotent, so a plan the previous leader already carried out costs one call
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ResumeRebalance<P> implements Rebalance {
+
+    private final PayloadStore<P> sharedState;
+    private final List<Address> nodes;
+    private final RebalanceFactory<P> rebalanceFactory;
+    private final RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher;
+
+    @Override
+    public void run() {
+        try {
+            // Refreshes the owners, a restarted node may have resumed its payloads under a new address
+            var running = remoteNodeMethodDispatcher.callRemoteGetRunningPayloads(nodes);
+            Set<Address> live = new HashSet<>(nodes);
+            Map<Address, List<P>> stops = new LinkedHashMap<>();
+            // After a merge more than one node may report a payload, the one recorded last keeps it
+            running.forEach((node, payloads) -> {
+                for (P p : payloads) {
+                    if (!node.equals(sharedState.getOwner(p))) {
+                        stops.computeIfAbsent(node, n -> new ArrayList<>())
+                                .add(p);
+                    }
+                }
+            });
+            Map<Address, List<P>> starts = new LinkedHashMap<>();
+            List<P> orphans = new ArrayList<>();
+            int kept = 0;
+
+            List<P> payloads = sharedState.snapshot();
+            for (P p : payloads) {
+                Address owner = sharedState.getOwner(p);
+                Address target = sharedState.getTarget(p);
+                boolean ownerLive = owner != null && live.contains(owner);
+                if (target != null && live.contains(target)) {
+                    if (ownerLive && !owner.equals(target)) {
+                        stops.computeIfAbsent(owner, node -> new ArrayList<>())
+                                .add(p);
+                    }
+                    starts.computeIfAbsent(target, node -> new ArrayList<>())
+                            .add(p);
+                } else if (ownerLive) {
+                    kept++;
+                } else {
+                    orphans.add(p);
+                }
+            }
+
+            var stopped = await(remoteNodeMethodDispatcher.callRemoteNotifyStopListenersAsync(stops));
+            // A payload that might still run on its old node is not started twice, the rest goes on
+            Set<P> unstopped = new HashSet<>();
+            stopped.failures()
+                    .forEach((node, e) -> {
+                        log.warn("Resumed stop failed on {}: {}", node, e.toString());
+                        unstopped.addAll(stops.get(node));
+                    });
+            // Their plan goes as well, or the next leader would move them to a stale target
+            starts.forEach((node, list) -> {
+                List<P> dropped = list.stream()
+                        .filter(unstopped::contains)
+                        .toList();
+                list.removeAll(dropped);
+                remoteNodeMethodDispatcher.unplan(node, dropped);
+            });
+            await(remoteNodeMethodDispatcher.callRemoteNotifyStartListenersAsync(starts)).failures()
+                    .forEach((node, e) -> log.warn("Resumed start failed on {}: {}", node, e.toString()));
+            log.info("Resumed rebalance: {} kept, {} planned, {} orphaned",
+                    kept, starts.values().stream().mapToInt(List::size).sum(), orphans.size());
+
+            if (!orphans.isEmpty()) {
+                rebalanceFactory.create(orphans, List.of(), payloads, nodes, remoteNodeMethodDispatcher)
+                        .run();
+            }
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
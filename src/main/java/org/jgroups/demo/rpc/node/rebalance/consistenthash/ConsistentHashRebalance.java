@@ -0,0 +1,47 @@
+package org.jgroups.demo.rpc.node.rebalance.consistenthash;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DiffRebalance;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Placement by consistent hashing, independent of member order.
+ * A membership change moves only the payloads of the ring segments that changed owner
+ * @param <P>
+ */
+public class ConsistentHashRebalance<P> extends DiffRebalance<P> {
+
+    private final int virtualNodes;
+
+    public ConsistentHashRebalance(List<P> payloads,
+                                   List<Address> nodes,
+                                   RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher,
+                                   int virtualNodes
+    ) {
+        super(payloads, nodes, remoteNodeMethodDispatcher);
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    protected Map<Address, List<P>> place(Map<Address, List<P>> current) {
+        Map<Address, List<P>> target = new LinkedHashMap<>();
+        if (nodes.isEmpty()) {
+            return target;
+        }
+        var ring = new HashRing(nodes, virtualNodes);
+
+        int capacity = payloads.size() / nodes.size() + 1;
+        for (Address node : nodes) {
+            target.put(node, new ArrayList<>(capacity));
+        }
+        for (P p : payloads) {
+            target.get(ring.owner(p)).add(p);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,69 @@
+package org.jgroups.demo.rpc.node.rebalance.consistenthash;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DeltaRebalance;
+import org.jgroups.demo.rpc.node.rebalance.HandoffPolicy;
+import org.jgroups.demo.rpc.node.rebalance.Rebalance;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.List;
+
+/**
+ * Stable placement with a consistent hash ring.
+ * Payloads must have a hashCode that is equal on all nodes
+ * @param <P>
+ */
+public class ConsistentHashRebalanceFactory<P> implements RebalanceFactory<P> {
+
+    private final int virtualNodes;
+    private final HandoffPolicy<P> handoffPolicy;
+
+    public ConsistentHashRebalanceFactory() {
+        this(64);
+    }
+
+    /**
+     * @param virtualNodes Ring positions per node, 1 disables virtual nodes
+     */
+    public ConsistentHashRebalanceFactory(int virtualNodes) {
+        this(virtualNodes, HandoffPolicy.breakBeforeMake());
+    }
+
+    /**
+     * @param handoffPolicy How moved payloads are handed over
+     */
+    public ConsistentHashRebalanceFactory(int virtualNodes, HandoffPolicy<P> handoffPolicy) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+        this.handoffPolicy = handoffPolicy;
+    }
+
+    @Override
+    public Rebalance create(List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var rebalance = new ConsistentHashRebalance<>(payloads, nodes,
+                remoteNodeMethodDispatcher, virtualNodes);
+        rebalance.setHandoffPolicy(handoffPolicy);
+        return rebalance;
+    }
+
+    /**
+     * Added payloads go to their ring owner, the same node a full rebalance would pick
+     */
+    @Override
+    public Rebalance create(List<P> added,
+                            List<P> removed,
+                            List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var ring = new HashRing(nodes, virtualNodes);
+        return new DeltaRebalance<P>(added, removed, nodes,
+                remoteNodeMethodDispatcher, ring::owner);
+    }
+}
@@ -0,0 +1,89 @@
+package org.jgroups.demo.rpc.node.rebalance.consistenthash;
+
+import org.jgroups.Address;
+import org.jgroups.util.NameCache;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Consistent hash ring over node names with virtual nodes.
+ * Nodes are hashed by logical name, so a restarted node gets its old positions back.
+ * Lookup is a binary search, O(log(N * virtualNodes))
+ */
+public class HashRing {
+
+    private final long[] hashes;
+    private final Address[] owners;
+
+    /**
+     * @param nodes        Nodes on the ring
+     * @param virtualNodes Positions per node, 1 means no virtual nodes
+     */
+    public HashRing(List<Address> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        int size = nodes.size() * virtualNodes;
+        Point[] points = new Point[size];
+        int i = 0;
+        for (Address node : nodes) {
+            String name = name(node);
+            for (int v = 0; v < virtualNodes; v++) {
+                points[i++] = new Point(hash(name + '#' + v), node);
+            }
+        }
+        Arrays.sort(points, Comparator.comparingLong(Point::hash));
+
+        hashes = new long[size];
+        owners = new Address[size];
+        for (i = 0; i < size; i++) {
+            hashes[i] = points[i].hash();
+            owners[i] = points[i].node();
+        }
+    }
+
+    /**
+     * @return Node owning the first ring position at or after the payload hash
+     */
+    public Address owner(Object payload) {
+        int i = Arrays.binarySearch(hashes, mix(payload.hashCode()));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == hashes.length ? 0 : i];
+    }
+
+    private static String name(Address node) {
+        String name = NameCache.get(node);
+        return name != null ? name : node.toString();
+    }
+
+    /**
+     * FNV-1a over chars, finished with mix
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3 fmix64 finalizer
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private record Point(long hash, Address node) {
+    }
+}
@@ -0,0 +1,30 @@
+package org.jgroups.demo.rpc.node.rebalance.roundrobin;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DiffRebalance;
+import org.jgroups.demo.rpc.node.rebalance.HandoffPolicy;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round robin placement that moves only the payloads whose node changes, handed over by the HandoffPolicy
+ * @param <P>
+ */
+public class RoundRobinHandoffRebalance<P> extends DiffRebalance<P> {
+
+    public RoundRobinHandoffRebalance(List<P> payloads,
+                                      List<Address> nodes,
+                                      RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher,
+                                      HandoffPolicy<P> handoffPolicy
+    ) {
+        super(payloads, nodes, remoteNodeMethodDispatcher);
+        setHandoffPolicy(handoffPolicy);
+    }
+
+    @Override
+    protected Map<Address, List<P>> place(Map<Address, List<P>> current) {
+        return RoundRobinRebalance.assign(payloads, nodes);
+    }
+}
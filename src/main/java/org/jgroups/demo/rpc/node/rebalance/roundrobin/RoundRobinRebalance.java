@@ -5,9 +5,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.jgroups.Address;
 import org.jgroups.demo.rpc.node.rebalance.Rebalance;
 import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+import org.jgroups.demo.rpc.node.rpc.StaleEpochException;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Stops all payloads on all nodes, then starts them round robin
+ * @param <P>
+ */
 @Slf4j
 @RequiredArgsConstructor
 public class RoundRobinRebalance<P> implements Rebalance {
@@ -20,17 +28,42 @@ public class RoundRobinRebalance<P> implements Rebalance {
     public void run() {
         try {
             remoteNodeMethodDispatcher.callRemoteNotifyStopListeners();
-            int n = 0;
-            for (P p : payloads) {
-                Address node = nodes.get(n++);
-                remoteNodeMethodDispatcher.callRemoteNotifyStartListeners(p, node);
-                if (n == nodes.size()) {
-                    n = 0;
-                }
-            }
+            remoteNodeMethodDispatcher.callRemoteNotifyStartListeners(assign());
+        } catch (InterruptedException e) {
+            log.info("Rebalance cancelled");
+            Thread.currentThread().interrupt();
+        } catch (StaleEpochException e) {
+            log.info("Rebalance fenced: {}", e.getMessage());
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * Round robin assignment of all payloads, computed before any start call
+     *
+     * @return Payloads per node
+     */
+    Map<Address, List<P>> assign() {
+        return assign(payloads, nodes);
+    }
+
+    static <P> Map<Address, List<P>> assign(List<P> payloads, List<Address> nodes) {
+        Map<Address, List<P>> assignment = new LinkedHashMap<>();
+        if (nodes.isEmpty()) {
+            return assignment;
+        }
+        int capacity = payloads.size() / nodes.size() + 1;
+        for (Address node : nodes) {
+            assignment.put(node, new ArrayList<>(capacity));
+        }
+        int n = 0;
+        for (P p : payloads) {
+            assignment.get(nodes.get(n++)).add(p);
+            if (n == nodes.size()) {
+                n = 0;
+            }
+        }
+        return assignment;
+    }
 }
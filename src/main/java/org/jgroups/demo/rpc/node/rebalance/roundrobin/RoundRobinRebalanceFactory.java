@@ -1,20 +1,59 @@
 package org.jgroups.demo.rpc.node.rebalance.roundrobin;
 
 import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DeltaRebalance;
+import org.jgroups.demo.rpc.node.rebalance.HandoffPolicy;
 import org.jgroups.demo.rpc.node.rebalance.Rebalance;
 import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
 import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RoundRobinRebalanceFactory<P> implements RebalanceFactory<P> {
 
+    private final AtomicInteger next = new AtomicInteger();
+    private final HandoffPolicy<P> handoffPolicy;
+
+    /**
+     * Full rebalance stops everything, then starts everything
+     */
+    public RoundRobinRebalanceFactory() {
+        this(HandoffPolicy.breakBeforeMake());
+    }
+
+    /**
+     * @param handoffPolicy Other than break before make, a full rebalance moves only payloads that change node
+     */
+    public RoundRobinRebalanceFactory(HandoffPolicy<P> handoffPolicy) {
+        this.handoffPolicy = handoffPolicy;
+    }
+
     @Override
     public Rebalance create(List<P> payloads,
                             List<Address> nodes,
                             RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
     ) {
+        if (handoffPolicy != HandoffPolicy.BREAK_BEFORE_MAKE) {
+            return new RoundRobinHandoffRebalance<>(payloads, nodes,
+                    remoteNodeMethodDispatcher, handoffPolicy);
+        }
         return new RoundRobinRebalance<>(payloads, nodes,
                 remoteNodeMethodDispatcher);
     }
+
+    /**
+     * Added payloads continue the round robin, removed ones are stopped, nothing else moves
+     */
+    @Override
+    public Rebalance create(List<P> added,
+                            List<P> removed,
+                            List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var placement = DeltaRebalance.<P>roundRobin(nodes, next.getAndAdd(added.size()));
+        return new DeltaRebalance<>(added, removed, nodes,
+                remoteNodeMethodDispatcher, placement);
+    }
 }
@@ -0,0 +1,73 @@
+package org.jgroups.demo.rpc.node.rebalance.sticky;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DiffRebalance;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Even distribution that keeps every payload on its current node while the node is under its quota.
+ * Only payloads of departed nodes, new payloads and the excess of overloaded nodes move
+ * @param <P>
+ */
+public class StickyRebalance<P> extends DiffRebalance<P> {
+
+    public StickyRebalance(List<P> payloads,
+                           List<Address> nodes,
+                           RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        super(payloads, nodes, remoteNodeMethodDispatcher);
+    }
+
+    @Override
+    protected Map<Address, List<P>> place(Map<Address, List<P>> current) {
+        Map<Address, List<P>> target = new LinkedHashMap<>();
+        if (nodes.isEmpty()) {
+            return target;
+        }
+        int base = payloads.size() / nodes.size();
+        int extra = payloads.size() % nodes.size();
+
+        // The most loaded nodes get the extra slots, so less payloads move
+        List<Address> order = new ArrayList<>(nodes);
+        order.sort(Comparator.comparingInt((Address node) -> running(current, node).size())
+                .reversed());
+
+        Set<P> unassigned = new LinkedHashSet<>(payloads);
+        for (int i = 0; i < order.size(); i++) {
+            int quota = base + (i < extra ? 1 : 0);
+            List<P> kept = new ArrayList<>(quota);
+            for (P p : running(current, order.get(i))) {
+                if (kept.size() == quota) {
+                    break;
+                }
+                if (unassigned.remove(p)) {
+                    kept.add(p);
+                }
+            }
+            target.put(order.get(i), kept);
+        }
+
+        Iterator<P> rest = unassigned.iterator();
+        for (int i = 0; i < order.size() && rest.hasNext(); i++) {
+            int quota = base + (i < extra ? 1 : 0);
+            List<P> list = target.get(order.get(i));
+            while (list.size() < quota && rest.hasNext()) {
+                list.add(rest.next());
+            }
+        }
+        return target;
+    }
+
+    private List<P> running(Map<Address, List<P>> current, Address node) {
+        return current.getOrDefault(node, List.of());
+    }
+}
@@ -0,0 +1,58 @@
+package org.jgroups.demo.rpc.node.rebalance.sticky;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DeltaRebalance;
+import org.jgroups.demo.rpc.node.rebalance.HandoffPolicy;
+import org.jgroups.demo.rpc.node.rebalance.Rebalance;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal movement rebalance: stops and starts only payloads that change node
+ * @param <P>
+ */
+public class StickyRebalanceFactory<P> implements RebalanceFactory<P> {
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final HandoffPolicy<P> handoffPolicy;
+
+    public StickyRebalanceFactory() {
+        this(HandoffPolicy.breakBeforeMake());
+    }
+
+    /**
+     * @param handoffPolicy How moved payloads are handed over
+     */
+    public StickyRebalanceFactory(HandoffPolicy<P> handoffPolicy) {
+        this.handoffPolicy = handoffPolicy;
+    }
+
+    @Override
+    public Rebalance create(List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var rebalance = new StickyRebalance<>(payloads, nodes,
+                remoteNodeMethodDispatcher);
+        rebalance.setHandoffPolicy(handoffPolicy);
+        return rebalance;
+    }
+
+    /**
+     * Added payloads continue the round robin, removed ones are stopped, nothing else moves
+     */
+    @Override
+    public Rebalance create(List<P> added,
+                            List<P> removed,
+                            List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var placement = DeltaRebalance.<P>roundRobin(nodes, next.getAndAdd(added.size()));
+        return new DeltaRebalance<>(added, removed, nodes,
+                remoteNodeMethodDispatcher, placement);
+    }
+}
@@ -0,0 +1,42 @@
+package org.jgroups.demo.rpc.node.rebalance.weighted;
+
+import org.jgroups.Address;
+import org.jgroups.stack.AddressGenerator;
+import org.jgroups.util.Bits;
+import org.jgroups.util.ExtendedUUID;
+
+/**
+ * Capacity weight of a node, advertised in its address (ExtendedUUID), so every member sees it in the view.
+ * Nodes without a weight count as {@value #DEFAULT}
+ */
+public final class NodeWeight {
+
+    public static final String KEY = "weight";
+    public static final int DEFAULT = 1;
+
+    private NodeWeight() {
+    }
+
+    /**
+     * @param weight Relative capacity, for example cores
+     * @return Generator for JChannel.addAddressGenerator, before connect
+     */
+    public static AddressGenerator generator(int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        byte[] value = new byte[Integer.BYTES];
+        Bits.writeInt(weight, value, 0);
+        return () -> ExtendedUUID.randomUUID().put(KEY, value);
+    }
+
+    public static int of(Address node) {
+        if (node instanceof ExtendedUUID uuid) {
+            byte[] value = uuid.get(KEY);
+            if (value != null && value.length == Integer.BYTES) {
+                return Math.max(1, Bits.readInt(value, 0));
+            }
+        }
+        return DEFAULT;
+    }
+}
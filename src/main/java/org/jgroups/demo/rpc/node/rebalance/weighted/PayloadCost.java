@@ -0,0 +1,21 @@
+package org.jgroups.demo.rpc.node.rebalance.weighted;
+
+/**
+ * Relative cost of running a payload, equal on all nodes
+ * @param <P>
+ */
+@FunctionalInterface
+public interface PayloadCost<P> {
+
+    /**
+     * @return Positive cost
+     */
+    long cost(P payload);
+
+    /**
+     * Every payload costs 1, placement balances payload counts
+     */
+    static <P> PayloadCost<P> unit() {
+        return p -> 1;
+    }
+}
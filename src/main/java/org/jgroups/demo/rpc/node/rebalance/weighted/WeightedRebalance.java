@@ -0,0 +1,104 @@
+package org.jgroups.demo.rpc.node.rebalance.weighted;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DiffRebalance;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Places total payload cost in proportion to node weight.
+ * A payload stays on its current node while the node is within its share,
+ * the rest goes largest cost first to the node with the lowest cost per weight (LPT)
+ * @param <P>
+ */
+public class WeightedRebalance<P> extends DiffRebalance<P> {
+
+    private final PayloadCost<P> cost;
+
+    public WeightedRebalance(List<P> payloads,
+                             List<Address> nodes,
+                             RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher,
+                             PayloadCost<P> cost
+    ) {
+        super(payloads, nodes, remoteNodeMethodDispatcher);
+        this.cost = cost;
+    }
+
+    @Override
+    protected Map<Address, List<P>> place(Map<Address, List<P>> current) {
+        Map<Address, List<P>> target = new LinkedHashMap<>();
+        if (nodes.isEmpty()) {
+            return target;
+        }
+        Map<P, Long> costs = new HashMap<>(payloads.size() * 2);
+        long totalCost = 0;
+        for (P p : payloads) {
+            long c = cost.cost(p);
+            costs.put(p, c);
+            totalCost += c;
+        }
+        long totalWeight = 0;
+        for (Address node : nodes) {
+            totalWeight += NodeWeight.of(node);
+        }
+
+        Set<P> unassigned = new LinkedHashSet<>(payloads);
+        PriorityQueue<Load> loads = new PriorityQueue<>(Comparator.comparingDouble(Load::perWeight)
+                .thenComparing(Comparator.comparingInt(Load::weight).reversed()));
+        for (Address node : nodes) {
+            int weight = NodeWeight.of(node);
+            double share = (double) totalCost * weight / totalWeight;
+            var load = new Load(node, weight);
+            List<P> kept = new ArrayList<>();
+            for (P p : current.getOrDefault(node, List.of())) {
+                Long c = costs.get(p);
+                if (c != null && load.cost + c <= share && unassigned.remove(p)) {
+                    kept.add(p);
+                    load.cost += c;
+                }
+            }
+            target.put(node, kept);
+            loads.add(load);
+        }
+
+        List<P> rest = new ArrayList<>(unassigned);
+        rest.sort(Comparator.comparingLong((P p) -> costs.get(p))
+                .reversed());
+        for (P p : rest) {
+            var load = loads.poll();
+            target.get(load.node)
+                    .add(p);
+            load.cost += costs.get(p);
+            loads.add(load);
+        }
+        return target;
+    }
+
+    private static final class Load {
+        private final Address node;
+        private final int weight;
+        private long cost;
+
+        private Load(Address node, int weight) {
+            this.node = node;
+            this.weight = weight;
+        }
+
+        private double perWeight() {
+            return (double) cost / weight;
+        }
+
+        private int weight() {
+            return weight;
+        }
+    }
+}
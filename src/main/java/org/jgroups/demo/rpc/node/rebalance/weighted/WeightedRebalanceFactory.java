@@ -0,0 +1,121 @@
+package org.jgroups.demo.rpc.node.rebalance.weighted;
+
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rebalance.DeltaRebalance;
+import org.jgroups.demo.rpc.node.rebalance.HandoffPolicy;
+import org.jgroups.demo.rpc.node.rebalance.Rebalance;
+import org.jgroups.demo.rpc.node.rebalance.RebalanceFactory;
+import org.jgroups.demo.rpc.node.rpc.RemoteNodeMethodDispatcher;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Capacity-aware placement: total payload cost per node in proportion to its {@link NodeWeight}
+ * @param <P>
+ */
+public class WeightedRebalanceFactory<P> implements RebalanceFactory<P> {
+
+    private final PayloadCost<P> cost;
+    private final HandoffPolicy<P> handoffPolicy;
+
+    /**
+     * Cost placed per node by deltas and not yet placed by a full rebalance
+     */
+    private final Map<Address, Long> deltaCost = new HashMap<>();
+    /**
+     * Node and cost of every payload counted in deltaCost
+     */
+    private final Map<P, Placed> deltaPlaced = new HashMap<>();
+
+    public WeightedRebalanceFactory() {
+        this(PayloadCost.unit());
+    }
+
+    /**
+     * @param cost Cost per payload, balanced instead of payload counts
+     */
+    public WeightedRebalanceFactory(PayloadCost<P> cost) {
+        this(cost, HandoffPolicy.breakBeforeMake());
+    }
+
+    /**
+     * @param handoffPolicy How moved payloads are handed over
+     */
+    public WeightedRebalanceFactory(PayloadCost<P> cost, HandoffPolicy<P> handoffPolicy) {
+        this.cost = cost;
+        this.handoffPolicy = handoffPolicy;
+    }
+
+    @Override
+    public Rebalance create(List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        var rebalance = new WeightedRebalance<>(payloads, nodes,
+                remoteNodeMethodDispatcher, cost);
+        rebalance.setHandoffPolicy(handoffPolicy);
+        // Not on create, a full rebalance coalesced away must not forget the deltas placed meanwhile.
+        // Only its own payloads, deltas placed while it ran are not in them
+        rebalance.setOnPlaced(() -> forget(payloads));
+        return rebalance;
+    }
+
+    /**
+     * Added payloads go to the node with the lowest added cost per weight, removed ones are stopped,
+     * nothing else moves. Drift from removals is evened out by the next full rebalance
+     */
+    @Override
+    public Rebalance create(List<P> added,
+                            List<P> removed,
+                            List<P> payloads,
+                            List<Address> nodes,
+                            RemoteNodeMethodDispatcher<P> remoteNodeMethodDispatcher
+    ) {
+        // Removed payloads are stopped, they weigh on no node any more
+        forget(removed);
+        // Without nodes there is no one to start the added payloads on
+        return new DeltaRebalance<>(nodes.isEmpty() ? List.of() : added, removed, nodes,
+                remoteNodeMethodDispatcher, leastAdded(nodes));
+    }
+
+    private Function<P, Address> leastAdded(List<Address> nodes) {
+        return p -> {
+            long c = cost.cost(p);
+            synchronized (deltaCost) {
+                Address best = null;
+                double bestLoad = Double.MAX_VALUE;
+                for (Address node : nodes) {
+                    double load = (double) (deltaCost.getOrDefault(node, 0L) + c) / NodeWeight.of(node);
+                    if (load < bestLoad) {
+                        best = node;
+                        bestLoad = load;
+                    }
+                }
+                deltaCost.merge(best, c, Long::sum);
+                var previous = deltaPlaced.put(p, new Placed(best, c));
+                if (previous != null) {
+                    deltaCost.merge(previous.node(), -previous.cost(), Long::sum);
+                }
+                return best;
+            }
+        };
+    }
+
+    private void forget(List<P> payloads) {
+        synchronized (deltaCost) {
+            for (P p : payloads) {
+                var placed = deltaPlaced.remove(p);
+                if (placed != null) {
+                    deltaCost.merge(placed.node(), -placed.cost(), Long::sum);
+                }
+            }
+            deltaCost.values().removeIf(c -> c == 0);
+        }
+    }
+
+    private record Placed(Address node, long cost) {
+    }
+}
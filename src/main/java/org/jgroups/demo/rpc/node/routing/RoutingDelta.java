@@ -0,0 +1,17 @@
+package org.jgroups.demo.rpc.node.routing;
+
+import org.jgroups.Address;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Difference between two consecutive versions of the routing table
+ *
+ * @param version    Version after the change
+ * @param assigned   Payloads with a new owner
+ * @param unassigned Payloads without owner now
+ * @param <P>
+ */
+public record RoutingDelta<P>(long version, Map<P, Address> assigned, Set<P> unassigned) {
+}
@@ -0,0 +1,10 @@
+package org.jgroups.demo.rpc.node.routing;
+
+@FunctionalInterface
+public interface RoutingListener<P> {
+
+    /**
+     * Called on the RAFT thread after the routing table changed, must not block
+     */
+    void onChange(RoutingDelta<P> delta);
+}
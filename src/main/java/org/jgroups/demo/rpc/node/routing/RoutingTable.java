@@ -0,0 +1,132 @@
+package org.jgroups.demo.rpc.node.routing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Committed owner of every running payload, the same on every node.
+ * The leader's acknowledged starts and stops reach it through the RAFT log, each applied entry is one version.
+ * Lookups never lock and never leave the node.
+ * Only the RAFT thread writes: changes are staged with assign, unassign and remove and published as one delta
+ * @param <P>
+ */
+@Slf4j
+public class RoutingTable<P> {
+
+    private final ConcurrentHashMap<P, Address> routes = new ConcurrentHashMap<>();
+    private final List<RoutingListener<P>> listeners = new CopyOnWriteArrayList<>();
+    private volatile long version;
+
+    private final Map<P, Address> assigned = new LinkedHashMap<>();
+    private final Set<P> unassigned = new LinkedHashSet<>();
+
+    /**
+     * @return Node running the payload, null if none
+     */
+    public Address ownerOf(P payload) {
+        return routes.get(payload);
+    }
+
+    /**
+     * @return Number of published changes, equal on nodes that applied the same log
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * @return Copy of all routes, not atomic with {@link #getVersion()}
+     */
+    public Map<P, Address> snapshot() {
+        return Map.copyOf(routes);
+    }
+
+    public void addListener(RoutingListener<P> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(RoutingListener<P> listener) {
+        listeners.remove(listener);
+    }
+
+    public void assign(P payload, Address owner) {
+        if (!owner.equals(routes.put(payload, owner))) {
+            unassigned.remove(payload);
+            assigned.put(payload, owner);
+        }
+    }
+
+    /**
+     * Only if the payload is still routed to the node
+     */
+    public void unassign(P payload, Address owner) {
+        if (routes.remove(payload, owner)) {
+            unassigned(payload);
+        }
+    }
+
+    public void remove(P payload) {
+        if (routes.remove(payload) != null) {
+            unassigned(payload);
+        }
+    }
+
+    public void clear() {
+        for (P payload : routes.keySet()) {
+            remove(payload);
+        }
+    }
+
+    /**
+     * Replaces all routes, e.g. from a snapshot. The delta is the difference to the previous routes
+     */
+    public void reset(long version, Map<P, Address> replacement) {
+        for (P payload : routes.keySet()) {
+            if (!replacement.containsKey(payload)) {
+                remove(payload);
+            }
+        }
+        replacement.forEach(this::assign);
+        publish(version);
+    }
+
+    /**
+     * Publishes the staged changes as the next version, nothing if there are none
+     */
+    public void publish() {
+        if (!assigned.isEmpty() || !unassigned.isEmpty()) {
+            publish(version + 1);
+        }
+    }
+
+    private void publish(long next) {
+        var delta = new RoutingDelta<>(next, Map.copyOf(assigned), Set.copyOf(unassigned));
+        assigned.clear();
+        unassigned.clear();
+        version = next;
+        for (RoutingListener<P> listener : listeners) {
+            try {
+                listener.onChange(delta);
+            } catch (RuntimeException e) {
+                log.error("Routing listener failed", e);
+            }
+        }
+    }
+
+    private void unassigned(P payload) {
+        assigned.remove(payload);
+        unassigned.add(payload);
+    }
+}
@@ -0,0 +1,67 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import org.jgroups.Address;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the leader's placement, so a new leader can resume it instead of starting over
+ * @param <P>
+ */
+public interface AssignmentLog<P> {
+
+    /**
+     * Called before the start calls, blocks until recorded
+     *
+     * @param assignment Payloads about to start per node
+     */
+    void planned(Map<Address, List<P>> assignment) throws Exception;
+
+    /**
+     * Planned payloads that do not start on the node after all, e.g. its start failed, must not block
+     */
+    void unplanned(Address node, List<P> payloads);
+
+    /**
+     * Node acknowledged the start, must not block
+     */
+    void started(Address node, List<P> payloads);
+
+    /**
+     * Node acknowledged the stop, must not block
+     */
+    void stopped(Address node, List<P> payloads);
+
+    /**
+     * All nodes acknowledged a stop of everything, must not block
+     */
+    void stoppedAll();
+
+    /**
+     * Records nothing
+     */
+    static <P> AssignmentLog<P> none() {
+        return new AssignmentLog<>() {
+            @Override
+            public void planned(Map<Address, List<P>> assignment) {
+            }
+
+            @Override
+            public void unplanned(Address node, List<P> payloads) {
+            }
+
+            @Override
+            public void started(Address node, List<P> payloads) {
+            }
+
+            @Override
+            public void stopped(Address node, List<P> payloads) {
+            }
+
+            @Override
+            public void stoppedAll() {
+            }
+        };
+    }
+}
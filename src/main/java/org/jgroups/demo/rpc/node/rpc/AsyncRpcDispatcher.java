@@ -0,0 +1,40 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.blocks.Response;
+import org.jgroups.blocks.RpcDispatcher;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * RpcDispatcher for methods that return a CompletionStage:
+ * the delivery thread is released right away, the response is sent when the stage completes
+ */
+public class AsyncRpcDispatcher extends RpcDispatcher {
+
+    public AsyncRpcDispatcher(JChannel channel, Object serverObj) {
+        super(channel, serverObj);
+        asyncDispatching(true);
+    }
+
+    @Override
+    public void handle(Message request, Response response) throws Exception {
+        Object retval = handle(request);
+        if (response == null) {
+            return;
+        }
+        if (retval instanceof CompletionStage<?> stage) {
+            stage.whenComplete((value, e) -> {
+                if (e == null) {
+                    response.send(value, false);
+                } else {
+                    response.send(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e, true);
+                }
+            });
+            return;
+        }
+        response.send(retval, false);
+    }
+}
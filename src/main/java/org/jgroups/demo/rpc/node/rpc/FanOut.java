@@ -0,0 +1,145 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Calls several nodes in parallel and collects the outcome per node.
+ * Every attempt has its own timeout, a failed node is retried without waiting for the others
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FanOut {
+
+    /**
+     * Timeout of one attempt on one node, ms
+     */
+    private final int timeout;
+    /**
+     * Attempts after the first one
+     */
+    private final int retries;
+
+    /**
+     * @param requests Request per node
+     * @param call     Sends one request
+     * @return Completes when every node answered or ran out of attempts, never exceptionally
+     */
+    public <T, R> CompletableFuture<Result<R>> call(Map<Address, T> requests,
+                                                   BiFunction<Address, T, CompletableFuture<R>> call
+    ) {
+        Map<Address, CompletableFuture<R>> calls = new LinkedHashMap<>();
+        requests.forEach((node, request) -> calls.put(node, attempt(node, request, call, retries)));
+
+        return CompletableFuture.allOf(calls.values().toArray(CompletableFuture[]::new))
+                .handle((ignored, e) -> {
+                    Map<Address, R> results = new LinkedHashMap<>();
+                    Map<Address, Throwable> failures = new LinkedHashMap<>();
+                    calls.forEach((node, future) -> {
+                        try {
+                            results.put(node, future.join());
+                        } catch (CompletionException failure) {
+                            failures.put(node, failure.getCause());
+                        } catch (CancellationException failure) {
+                            // e.g. the dispatcher closed or the caller gave up
+                            failures.put(node, failure);
+                        }
+                    });
+                    return new Result<>(results, failures);
+                });
+    }
+
+    private <T, R> CompletableFuture<R> attempt(Address node,
+                                                T request,
+                                                BiFunction<Address, T, CompletableFuture<R>> call,
+                                                int retriesLeft
+    ) {
+        CompletableFuture<R> future;
+        try {
+            future = call.apply(node, request)
+                    .orTimeout(timeout, MILLISECONDS);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        if (retriesLeft == 0) {
+            return future;
+        }
+        return future.handle((result, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    if (isStale(e)) {
+                        return CompletableFuture.<R>failedFuture(e);
+                    }
+                    log.warn("Call to {} failed, retrying: {}", node, e.toString());
+                    return attempt(node, request, call, retriesLeft - 1);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * A newer leader took over, retries would be rejected as well
+     */
+    private static boolean isStale(Throwable e) {
+        return e instanceof StaleEpochException || e.getCause() instanceof StaleEpochException;
+    }
+
+    /**
+     * Waits for a future, failures are rethrown unwrapped.
+     * An interrupted caller cancels the future
+     */
+    public static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Outcome per node, in request order
+     *
+     * @param results  Nodes that answered
+     * @param failures Nodes that failed every attempt
+     */
+    public record Result<R>(Map<Address, R> results, Map<Address, Throwable> failures) {
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        public List<Address> failedNodes() {
+            return new ArrayList<>(failures.keySet());
+        }
+
+        /**
+         * @throws RemoteCallException if any node failed
+         */
+        public Result<R> throwIfFailed() throws RemoteCallException {
+            if (!failures.isEmpty()) {
+                throw new RemoteCallException(failures);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import lombok.Getter;
+import org.jgroups.Address;
+
+import java.util.Map;
+
+/**
+ * Remote call failed on some nodes
+ */
+@Getter
+public class RemoteCallException extends Exception {
+
+    /**
+     * Cause per failed node
+     */
+    private final transient Map<Address, Throwable> failures;
+
+    public RemoteCallException(Map<Address, Throwable> failures) {
+        super("Remote call failed on " + failures.keySet(), failures.values()
+                .stream()
+                .findFirst()
+                .orElse(null));
+        this.failures = failures;
+    }
+}
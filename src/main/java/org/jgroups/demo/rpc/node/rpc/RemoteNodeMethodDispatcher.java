@@ -1,34 +1,203 @@
 package org.jgroups.demo.rpc.node.rpc;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jgroups.Address;
-import org.jgroups.Message;
 import org.jgroups.blocks.MethodCall;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.metrics.NodeMetrics;
+import org.jgroups.demo.rpc.node.load.LoadSample;
+import org.jgroups.demo.store.AssignmentFile;
+import org.jgroups.demo.store.PayloadStore;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.Util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jgroups.demo.rpc.node.rpc.FanOut.await;
 
 /**
- * Call methods on remote nodes
+ * Call methods on remote nodes.
+ * The async variants never block, every node has its own timeout and failed nodes are retried on their own.
+ * The blocking variants wait for them.
+ * Successful start and stop calls are recorded as payload owners in the store and in the {@link AssignmentLog}.
+ * Calls carry method IDs, the RpcDispatcher needs {@link RemoteNodeMethods#METHOD_LOOKUP}
  * @param <P>
  */
 @Slf4j
-@RequiredArgsConstructor
 public class RemoteNodeMethodDispatcher<P> {
 
+    public static final int DEFAULT_RETRIES = 1;
+
     private final RpcDispatcher rpcDispatcher;
     private final int timeout;
+    private final PayloadCodec<P> codec;
+    private final PayloadStore<P> owners;
+    private final FanOut fanOut;
+    private final NodeMetrics metrics;
+    private final AssignmentLog<P> assignmentLog;
+    /**
+     * Sent with start and stop calls, see {@link #withEpoch}
+     */
+    private final long epoch;
+    /**
+     * Newest epoch a node answered with once this epoch is stale, 0 before
+     */
+    private final AtomicLong fencedBy;
+
+    public RemoteNodeMethodDispatcher(RpcDispatcher rpcDispatcher, int timeout, PayloadCodec<P> codec) {
+        this(rpcDispatcher, timeout, codec, new PayloadStore<>());
+    }
+
+    /**
+     * @param owners Store whose owners are updated, payloads not in the store are ignored
+     */
+    public RemoteNodeMethodDispatcher(RpcDispatcher rpcDispatcher,
+                                      int timeout,
+                                      PayloadCodec<P> codec,
+                                      PayloadStore<P> owners
+    ) {
+        this(rpcDispatcher, timeout, codec, owners, DEFAULT_RETRIES);
+    }
+
+    /**
+     * @param timeout Timeout of one call on one node, ms
+     * @param retries Attempts per node after the first one
+     */
+    public RemoteNodeMethodDispatcher(RpcDispatcher rpcDispatcher,
+                                      int timeout,
+                                      PayloadCodec<P> codec,
+                                      PayloadStore<P> owners,
+                                      int retries
+    ) {
+        this(rpcDispatcher, timeout, codec, owners, retries, new NodeMetrics());
+    }
+
+    /**
+     * @param metrics Records phase and per node RPC latencies
+     */
+    public RemoteNodeMethodDispatcher(RpcDispatcher rpcDispatcher,
+                                      int timeout,
+                                      PayloadCodec<P> codec,
+                                      PayloadStore<P> owners,
+                                      int retries,
+                                      NodeMetrics metrics
+    ) {
+        this(rpcDispatcher, timeout, codec, owners, retries, metrics, AssignmentLog.none());
+    }
+
+    /**
+     * @param assignmentLog Records planned starts before they are sent and the acknowledged starts and stops
+     */
+    public RemoteNodeMethodDispatcher(RpcDispatcher rpcDispatcher,
+                                      int timeout,
+                                      PayloadCodec<P> codec,
+                                      PayloadStore<P> owners,
+                                      int retries,
+                                      NodeMetrics metrics,
+                                      AssignmentLog<P> assignmentLog
+    ) {
+        this.metrics = metrics;
+        this.assignmentLog = assignmentLog;
+        this.rpcDispatcher = rpcDispatcher;
+        this.timeout = timeout;
+        this.codec = codec;
+        this.owners = owners;
+        this.fanOut = new FanOut(timeout, retries);
+        this.epoch = 0;
+        this.fencedBy = new AtomicLong();
+    }
+
+    private RemoteNodeMethodDispatcher(RemoteNodeMethodDispatcher<P> dispatcher, long epoch) {
+        this.metrics = dispatcher.metrics;
+        this.assignmentLog = dispatcher.assignmentLog;
+        this.rpcDispatcher = dispatcher.rpcDispatcher;
+        this.timeout = dispatcher.timeout;
+        this.codec = dispatcher.codec;
+        this.owners = dispatcher.owners;
+        this.fanOut = dispatcher.fanOut;
+        this.epoch = epoch;
+        this.fencedBy = new AtomicLong();
+    }
+
+    /**
+     * Nodes reject start and stop calls with an epoch older than the newest they saw.
+     * Once a node rejected one, every further start and stop call of this dispatcher fails right away
+     *
+     * @param epoch RAFT term of this leader
+     * @return Dispatcher that sends the epoch, everything else shared with this one
+     */
+    public RemoteNodeMethodDispatcher<P> withEpoch(long epoch) {
+        return new RemoteNodeMethodDispatcher<>(this, epoch);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return true if a node saw a newer epoch
+     */
+    public boolean isFenced() {
+        return fencedBy.get() != 0;
+    }
 
     /**
      * Stop all payloads on all nodes. Multicast
      */
     public void callRemoteNotifyStopListeners() throws Exception {
-        var method = RemoteNodeMethods.class.getMethod("notifyStopListeners");
-        var call = new MethodCall(method);
-        var opts = RequestOptions.SYNC()
-                .timeout(timeout);
+        await(callRemoteNotifyStopListenersAsync());
+    }
+
+    /**
+     * Stop all payloads on all nodes. Multicast
+     *
+     * @return Fails if a node threw, nodes that left are ignored
+     */
+    public CompletableFuture<Void> callRemoteNotifyStopListenersAsync() throws Exception {
+        if (isFenced()) {
+            return CompletableFuture.failedFuture(new StaleEpochException(epoch, fencedBy.get()));
+        }
+        var call = new MethodCall(RemoteNodeMethods.NOTIFY_STOP_ALL, epoch);
 
-        rpcDispatcher.callRemoteMethods(null, call, opts);
+        long start = System.nanoTime();
+        return rpcDispatcher.callRemoteMethodsWithFuture(null, call, options())
+                .orTimeout(timeout, MILLISECONDS)
+                .thenCompose(rsps -> {
+                    Map<Address, Throwable> failures = new LinkedHashMap<>();
+                    rsps.forEach((node, rsp) -> {
+                        if (rsp.hasException()) {
+                            failures.put(node, rsp.getException());
+                            checkFenced(rsp.getException());
+                        }
+                    });
+                    if (isFenced()) {
+                        return CompletableFuture.failedFuture(new StaleEpochException(epoch, fencedBy.get()));
+                    }
+                    if (!failures.isEmpty()) {
+                        return CompletableFuture.failedFuture(new RemoteCallException(failures));
+                    }
+                    // Nothing to record before the first placement
+                    boolean assigned = owners.hasAssignments();
+                    owners.clearOwners();
+                    if (assigned) {
+                        assignmentLog.stoppedAll();
+                    }
+                    metrics.getStopPhase().recordSince(start);
+                    return CompletableFuture.completedFuture(null);
+                });
     }
 
     /**
@@ -38,27 +207,307 @@ public class RemoteNodeMethodDispatcher<P> {
      * @param node    Address node
      */
     public void callRemoteNotifyStartListeners(P payload, Address node) throws Exception {
-        var method = RemoteNodeMethods.class.getMethod("notifyStartListeners", Object.class);
-        var call = new MethodCall(method, payload);
-        var opts = RequestOptions.SYNC()
-                .timeout(timeout);
+        await(callRemoteNotifyStartListenersAsync(Map.of(node, List.of(payload))))
+                .throwIfFailed();
+    }
+
+    /**
+     * Start payloads on their nodes. One unicast per node, all nodes are called in parallel
+     *
+     * @param assignment Payloads per node
+     */
+    public void callRemoteNotifyStartListeners(Map<Address, List<P>> assignment) throws Exception {
+        await(callRemoteNotifyStartListenersAsync(assignment))
+                .throwIfFailed();
+    }
+
+    /**
+     * Start payloads on their nodes. One unicast per node, all nodes are called in parallel.
+     * Only moves are planned before, a payload running nowhere is found by the running query of the next leader.
+     * The plans of nodes whose start failed are dropped
+     *
+     * @param assignment Payloads per node
+     * @return Outcome per node
+     */
+    public CompletableFuture<FanOut.Result<Void>> callRemoteNotifyStartListenersAsync(Map<Address, List<P>> assignment)
+            throws IOException {
+        long start = System.nanoTime();
+        if (isFenced()) {
+            return CompletableFuture.failedFuture(new StaleEpochException(epoch, fencedBy.get()));
+        }
+        var moves = moves(assignment);
+        if (!moves.isEmpty()) {
+            try {
+                assignmentLog.planned(moves);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return this.<Void>callInParallel(RemoteNodeMethods.NOTIFY_START_BATCH, assignment, ignored -> null)
+                .thenApply(result -> {
+                    // Also a plan of the previous leader this start was to carry out
+                    result.failures()
+                            .keySet()
+                            .forEach(node -> assignmentLog.unplanned(node, assignment.get(node)));
+                    result.results()
+                            .keySet()
+                            .forEach(node -> {
+                                List<P> started = assignment.get(node);
+                                started.forEach(p -> owners.setOwner(p, node));
+                                assignmentLog.started(node, started);
+                                metrics.getPayloadsStarted().add(started.size());
+                            });
+                    metrics.getStartPhase().recordSince(start);
+                    return result;
+                });
+    }
+
+    /**
+     * Stop only the given payloads on their nodes. One unicast per node, all nodes are called in parallel
+     *
+     * @param assignment Payloads to stop per node
+     */
+    public void callRemoteNotifyStopListeners(Map<Address, List<P>> assignment) throws Exception {
+        await(callRemoteNotifyStopListenersAsync(assignment))
+                .throwIfFailed();
+    }
+
+    /**
+     * Stop only the given payloads on their nodes. One unicast per node, all nodes are called in parallel.
+     * Only the payloads a node actually ran are recorded as stopped
+     *
+     * @param assignment Payloads to stop per node
+     * @return Stopped payloads per node, a subset of the assignment
+     */
+    public CompletableFuture<FanOut.Result<List<P>>> callRemoteNotifyStopListenersAsync(
+            Map<Address, List<P>> assignment) throws IOException {
+        long start = System.nanoTime();
+        return callInParallel(RemoteNodeMethods.NOTIFY_STOP, assignment, bytes -> decode((byte[]) bytes))
+                .thenApply(result -> {
+                    result.results()
+                            .forEach((node, stopped) -> {
+                                stopped.forEach(p -> owners.clearOwner(p, node));
+                                assignmentLog.stopped(node, stopped);
+                                metrics.getPayloadsStopped().add(stopped.size());
+                            });
+                    metrics.getStopPhase().recordSince(start);
+                    return result;
+                });
+    }
+
+    /**
+     * Collect payloads currently running on the nodes
+     *
+     * @param nodes Nodes to ask
+     * @return Running payloads per node, nodes that did not answer are missing
+     */
+    public Map<Address, List<P>> callRemoteGetRunningPayloads(List<Address> nodes) throws Exception {
+        var result = await(callRemoteGetRunningPayloadsAsync(nodes));
+        result.failures()
+                .forEach((node, e) -> log.warn("No running payloads from {}: {}", node, e.toString()));
+        return result.results();
+    }
+
+    /**
+     * Collect payloads currently running on the nodes. One unicast per node, all nodes are called in parallel.
+     * Every node becomes the owner of the payloads it reports
+     *
+     * @param nodes Nodes to ask
+     * @return Running payloads per node
+     */
+    public CompletableFuture<FanOut.Result<List<P>>> callRemoteGetRunningPayloadsAsync(List<Address> nodes) {
+        return callRemoteGetRunningPayloadsAsync(nodes, true);
+    }
+
+    /**
+     * Collect payloads currently running on the nodes. One unicast per node, all nodes are called in parallel
+     *
+     * @param nodes Nodes to ask
+     * @param adopt false to leave the owners as they are, e.g. when several nodes may report the same payload
+     * @return Running payloads per node
+     */
+    public CompletableFuture<FanOut.Result<List<P>>> callRemoteGetRunningPayloadsAsync(List<Address> nodes,
+                                                                                      boolean adopt) {
+        var call = new MethodCall(RemoteNodeMethods.ENCODE_RUNNING_PAYLOADS);
+
+        Map<Address, MethodCall> requests = new LinkedHashMap<>();
+        nodes.forEach(node -> requests.put(node, call));
+        return fanOut.call(requests, (node, request) -> this.<byte[]>invoke(node, request)
+                .thenApply(bytes -> {
+                    List<P> payloads = decode(bytes);
+                    if (adopt) {
+                        adopt(node, payloads);
+                    }
+                    return payloads;
+                }));
+    }
+
+    /**
+     * Record the node as owner of payloads it already runs, without calling it
+     *
+     * @param node     Node running the payloads
+     * @param payloads Payloads
+     */
+    public void adopt(Address node, List<P> payloads) {
+        // e.g. the start was acked but its ASSIGN not committed before the leader changed
+        List<P> moved = new ArrayList<>();
+        for (P p : payloads) {
+            Address owner = owners.getOwner(p);
+            if (!node.equals(owner)) {
+                moved.add(p);
+            }
+            owners.setOwner(p, node);
+        }
+        if (!moved.isEmpty()) {
+            assignmentLog.started(node, moved);
+        }
+    }
+
+    /**
+     * Drop the plans of payloads that will not start on the node after all, without calling it
+     *
+     * @param node     Planned node
+     * @param payloads Payloads
+     */
+    public void unplan(Address node, List<P> payloads) {
+        if (!payloads.isEmpty()) {
+            assignmentLog.unplanned(node, payloads);
+        }
+    }
 
-        rpcDispatcher.callRemoteMethod(node, call, opts);
+    /**
+     * Collect the load of the nodes since their previous sample. One unicast per node, in parallel
+     *
+     * @param nodes Nodes to ask
+     * @return Load per node
+     */
+    public CompletableFuture<FanOut.Result<LoadSample<P>>> callRemoteSampleLoadAsync(List<Address> nodes) {
+        var call = new MethodCall(RemoteNodeMethods.ENCODE_LOAD_SAMPLE);
+
+        Map<Address, MethodCall> requests = new LinkedHashMap<>();
+        nodes.forEach(node -> requests.put(node, call));
+        return fanOut.call(requests, (node, request) -> this.<byte[]>invoke(node, request)
+                .thenApply(bytes -> {
+                    try {
+                        return LoadSample.fromBytes(bytes, codec);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
     }
 
     /**
-     * Get (Update) state on all nodes. Multicast
+     * Collect what restarted nodes ran before. One unicast per node, in parallel, each node answers once
      *
-     * @param node From where needs to getState
+     * @param nodes Nodes to ask
+     * @return Previous address, epoch and payloads per node, without node if there is nothing to resume
+     */
+    public CompletableFuture<FanOut.Result<AssignmentFile.Contents<P>>> callRemoteGetResumablePayloadsAsync(
+            List<Address> nodes) {
+        var call = new MethodCall(RemoteNodeMethods.ENCODE_RESUMABLE_PAYLOADS);
+
+        Map<Address, MethodCall> requests = new LinkedHashMap<>();
+        nodes.forEach(node -> requests.put(node, call));
+        return fanOut.call(requests, (node, request) -> this.<byte[]>invoke(node, request)
+                .thenApply(this::decodeResumable));
+    }
+
+    /**
+     * @return Payloads per node that currently run on another node
      */
-    public void callRemoteGetState(Address node) throws Exception {
-        var method = RemoteNodeMethods.class.getMethod("getState", Address.class, int.class);
-        var call = new MethodCall(method, node, timeout);
-        var opts = RequestOptions.SYNC()
-                .setTransientFlags(Message.TransientFlag.DONT_LOOPBACK)
+    private Map<Address, List<P>> moves(Map<Address, List<P>> assignment) {
+        Map<Address, List<P>> moves = new LinkedHashMap<>();
+        assignment.forEach((node, payloads) -> {
+            for (P p : payloads) {
+                Address owner = owners.getOwner(p);
+                if (owner != null && !owner.equals(node)) {
+                    moves.computeIfAbsent(node, n -> new ArrayList<>())
+                            .add(p);
+                }
+            }
+        });
+        return moves;
+    }
+
+    private <R> CompletableFuture<FanOut.Result<R>> callInParallel(short methodId,
+                                                                 Map<Address, List<P>> assignment,
+                                                                 Function<Object, R> response
+    ) throws IOException {
+        if (isFenced()) {
+            return CompletableFuture.failedFuture(new StaleEpochException(epoch, fencedBy.get()));
+        }
+        // The same list sent to several nodes is encoded once
+        Map<List<P>, MethodCall> encoded = new IdentityHashMap<>();
+        Map<Address, MethodCall> requests = new LinkedHashMap<>();
+        for (var entry : assignment.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            MethodCall call = encoded.get(entry.getValue());
+            if (call == null) {
+                call = new MethodCall(methodId, epoch, codec.toBytes(entry.getValue()));
+                encoded.put(entry.getValue(), call);
+            }
+            requests.put(entry.getKey(), call);
+        }
+        return fanOut.call(requests, (node, call) -> this.invoke(node, call)
+                .whenComplete((ignored, e) -> checkFenced(e))
+                .thenApply(response));
+    }
+
+    private void checkFenced(Throwable e) {
+        if (e instanceof CompletionException) {
+            e = e.getCause();
+        }
+        if (e instanceof StaleEpochException stale && fencedBy.compareAndSet(0, stale.getNewest())) {
+            metrics.getStaleEpochRejections().increment();
+            log.info("Epoch {} fenced by {}, start and stop calls stop here", epoch, stale.getNewest());
+        }
+    }
+
+    private <T> CompletableFuture<T> invoke(Address node, MethodCall call) {
+        long start = System.nanoTime();
+        try {
+            CompletableFuture<T> future = rpcDispatcher.callRemoteMethodWithFuture(node, call, options());
+            future.whenComplete((ignored, e) -> {
+                metrics.getRpcLatency().recordSince(start);
+                if (e != null) {
+                    metrics.getRpcFailures().increment();
+                }
+            });
+            return future;
+        } catch (Exception e) {
+            metrics.getRpcFailures().increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private RequestOptions options() {
+        return RequestOptions.SYNC()
                 .timeout(timeout);
+    }
 
-        rpcDispatcher.callRemoteMethods(null, call, opts);
+    private AssignmentFile.Contents<P> decodeResumable(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new AssignmentFile.Contents<>(null, 0, List.of());
+        }
+        try {
+            var in = new ByteArrayDataInputStream(bytes);
+            Address previous = Util.readAddress(in);
+            long epoch = in.readLong();
+            return new AssignmentFile.Contents<>(previous, epoch, codec.readAll(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
+    private List<P> decode(byte[] bytes) {
+        try {
+            return codec.fromBytes(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
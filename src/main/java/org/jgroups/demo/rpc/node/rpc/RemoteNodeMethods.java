@@ -4,13 +4,27 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.jgroups.Address;
 import org.jgroups.JChannel;
+import org.jgroups.blocks.MethodLookup;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.executor.ListenerExecutor;
 import org.jgroups.demo.rpc.listener.StartListener;
 import org.jgroups.demo.rpc.listener.StopListener;
+import org.jgroups.demo.rpc.node.load.LoadMeter;
+import org.jgroups.demo.store.AssignmentFile;
+import org.jgroups.demo.store.PayloadStore;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.Util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Node methods that might be invoked remotely with RPC
@@ -22,38 +36,229 @@ import java.util.List;
 @RequiredArgsConstructor
 public class RemoteNodeMethods<P> {
 
+    /**
+     * Method IDs sent instead of Method signatures
+     */
+    public static final short NOTIFY_STOP_ALL = 0;
+    public static final short NOTIFY_STOP = 1;
+    public static final short NOTIFY_START_BATCH = 2;
+    public static final short ENCODE_RUNNING_PAYLOADS = 3;
+    public static final short ENCODE_LOAD_SAMPLE = 4;
+    public static final short ENCODE_RESUMABLE_PAYLOADS = 5;
+
+    private static final Method[] METHODS;
+
+    static {
+        try {
+            METHODS = new Method[]{
+                    RemoteNodeMethods.class.getMethod("notifyStopListeners", long.class),
+                    RemoteNodeMethods.class.getMethod("notifyStopListeners", long.class, byte[].class),
+                    RemoteNodeMethods.class.getMethod("notifyStartListenersBatch", long.class, byte[].class),
+                    RemoteNodeMethods.class.getMethod("encodeRunningPayloads"),
+                    RemoteNodeMethods.class.getMethod("encodeLoadSample"),
+                    RemoteNodeMethods.class.getMethod("encodeResumablePayloads")
+            };
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Resolves method IDs, register on every RpcDispatcher with RemoteNodeMethods.
+     * Methods return a CompletableFuture, see {@link AsyncRpcDispatcher}
+     */
+    public static final MethodLookup METHOD_LOOKUP = id -> id >= 0 && id < METHODS.length ? METHODS[id] : null;
+
     private final List<StartListener<P>> startListeners = new LinkedList<>();
     private final List<StopListener<P>> stopListeners = new LinkedList<>();
 
     private final JChannel jChannel;
+    private final PayloadCodec<P> codec;
+    /**
+     * Runs the listeners off the RPC threads
+     */
+    private final ListenerExecutor listenerExecutor;
     /**
      * Payload for one Node
      */
-    private final List<P> payloadNode = new LinkedList<>();
+    private final PayloadStore<P> payloadNode = new PayloadStore<>();
+    /**
+     * Newest leader epoch seen, start and stop calls with an older one are rejected
+     */
+    private final AtomicLong epoch = new AtomicLong();
+    /**
+     * Work per payload, reported by the application
+     */
+    private final LoadMeter<P> loadMeter = new LoadMeter<>();
+    /**
+     * Records starts and stops for a restart, null if not persisted
+     */
+    private AssignmentFile<P> assignmentFile;
+    /**
+     * What the previous run of this node left, until the leader asked for it
+     */
+    private final AtomicReference<AssignmentFile.Contents<P>> resumable = new AtomicReference<>();
+
+    /**
+     * Notifies Start listeners, i.e. executes callbacks, on the listener executor.
+     * Idempotent, a retried call does not start a running payload again but waits for its listeners
+     *
+     * @return Completes when the listeners returned
+     */
+    public CompletableFuture<Void> notifyStartListeners(P payload) throws InterruptedException {
+        if (!payloadNode.add(payload)) {
+            return listenerExecutor.afterInFlight(List.of(payload));
+        }
+        return listenerExecutor.submit(payload, () -> startListeners.forEach(listener -> listener.onStart(payload)))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.warn("Start of {} failed: {}", payload, e.toString());
+                        payloadNode.remove(payload);
+                    }
+                });
+    }
+
+    /**
+     * Notifies Start listeners for all payloads assigned to this Node with one call.
+     * Blocks while the listener executor is full
+     *
+     * @return Completes when all listeners returned and the started payloads are recorded,
+     * the leader gets the response only then
+     */
+    public CompletableFuture<Void> notifyStartListenersBatch(List<P> payloads) throws InterruptedException {
+        List<CompletableFuture<Void>> started = new ArrayList<>(payloads.size());
+        for (P payload : payloads) {
+            started.add(notifyStartListeners(payload));
+        }
+        var all = CompletableFuture.allOf(started.toArray(CompletableFuture[]::new));
+        var file = assignmentFile;
+        if (file == null) {
+            return all;
+        }
+        return all.whenComplete((ignored, e) -> file.started(payloads.stream()
+                .filter(payloadNode::contains)
+                .toList(), epoch.get()));
+    }
+
+    /**
+     * RPC entry point, payloads encoded with the codec
+     *
+     * @param epoch Epoch of the calling leader
+     */
+    public CompletableFuture<Void> notifyStartListenersBatch(long epoch, byte[] payloads)
+            throws IOException, InterruptedException, StaleEpochException {
+        fence(epoch);
+        return notifyStartListenersBatch(codec.fromBytes(payloads));
+    }
+
+    /**
+     * Notifies Stop listeners for all payloads running on this Node
+     */
+    public CompletableFuture<Void> notifyStopListeners() throws InterruptedException {
+        return notifyStopListeners(payloadNode.snapshot()).thenApply(ignored -> null);
+    }
+
+    /**
+     * RPC entry point
+     *
+     * @param epoch Epoch of the calling leader
+     */
+    public CompletableFuture<Void> notifyStopListeners(long epoch) throws InterruptedException, StaleEpochException {
+        fence(epoch);
+        return notifyStopListeners();
+    }
+
+    /**
+     * Notifies Stop listeners only for the given payloads that run on this Node,
+     * on the listener executor after their Start listeners returned.
+     * Blocks while the listener executor is full
+     *
+     * @return Completes with the payloads that ran here and were stopped
+     */
+    public CompletableFuture<List<P>> notifyStopListeners(List<P> payloads) throws InterruptedException {
+        List<P> stopped = payloadNode.removeAll(payloads);
+        if (stopped.isEmpty()) {
+            return CompletableFuture.completedFuture(stopped);
+        }
+        var file = assignmentFile;
+        if (file != null) {
+            file.stopped(stopped, epoch.get());
+        }
+        return listenerExecutor.submitAfter(stopped, () -> stopListeners.forEach(listener -> listener.onStopAll(stopped)))
+                .thenApply(ignored -> stopped);
+    }
+
+    /**
+     * RPC entry point, payloads encoded with the codec
+     *
+     * @param epoch Epoch of the calling leader
+     * @return Payloads that ran here and were stopped, encoded with the codec
+     */
+    public CompletableFuture<byte[]> notifyStopListeners(long epoch, byte[] payloads)
+            throws IOException, InterruptedException, StaleEpochException {
+        fence(epoch);
+        return notifyStopListeners(codec.fromBytes(payloads)).thenApply(stopped -> {
+            try {
+                return codec.toBytes(stopped);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Accepts the epoch if it is not older than the newest one seen
+     */
+    private void fence(long epoch) throws StaleEpochException {
+        long newest = this.epoch.accumulateAndGet(epoch, Math::max);
+        if (epoch < newest) {
+            log.info("Rejected call of epoch {}, newest is {}", epoch, newest);
+            throw new StaleEpochException(epoch, newest);
+        }
+    }
+
+    /**
+     * @return Payloads currently running on this Node
+     */
+    public List<P> getRunningPayloads() {
+        return payloadNode.snapshot();
+    }
 
     /**
-     * Notifies Stop listeners, i.e. executes callbacks
+     * RPC entry point
+     *
+     * @return Payloads currently running on this Node, encoded with the codec
      */
-    public void notifyStartListeners(P payload) {
-        startListeners.forEach(listener -> listener.onStart(payload));
-        payloadNode.add(payload);
+    public byte[] encodeRunningPayloads() throws IOException {
+        return codec.toBytes(getRunningPayloads());
     }
 
     /**
-     * Notifies Start listeners, executes callbacks
+     * RPC entry point, answered once. The leader starts the payloads its RAFT log still assigns
+     * to the previous address of this node
+     *
+     * @return Previous address, its newest epoch and its payloads, empty if there is nothing to resume
      */
-    public void notifyStopListeners() {
-        if (payloadNode.isEmpty()) {
-            return;
+    public byte[] encodeResumablePayloads() throws IOException {
+        var previous = resumable.getAndSet(null);
+        if (previous == null) {
+            return new byte[0];
         }
-        stopListeners.forEach(listener -> listener.onStopAll(payloadNode));
-        payloadNode.clear();
+        var out = new ByteArrayDataOutputStream(Long.BYTES + 64 + previous.payloads().size() * 16);
+        Util.writeAddress(previous.node(), out);
+        out.writeLong(previous.epoch());
+        codec.writeAll(previous.payloads(), out);
+        return out.getBuffer()
+                .getBytes();
     }
 
     /**
-     * A way to replicate new state to all nodes
+     * RPC entry point
+     *
+     * @return Load since the previous call, encoded with the codec
      */
-    public void getState(Address source, int timeout) throws Exception {
-        jChannel.getState(source, timeout);
+    public byte[] encodeLoadSample() throws IOException {
+        return loadMeter.sample(payloadNode.snapshot(), listenerExecutor)
+                .toBytes(codec);
     }
 }
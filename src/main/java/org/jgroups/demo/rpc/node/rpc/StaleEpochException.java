@@ -0,0 +1,19 @@
+package org.jgroups.demo.rpc.node.rpc;
+
+import lombok.Getter;
+
+/**
+ * Call from a leader whose epoch (RAFT term) is older than one the node already saw
+ */
+@Getter
+public class StaleEpochException extends Exception {
+
+    private final long epoch;
+    private final long newest;
+
+    public StaleEpochException(long epoch, long newest) {
+        super("Epoch " + epoch + " is older than " + newest);
+        this.epoch = epoch;
+        this.newest = newest;
+    }
+}
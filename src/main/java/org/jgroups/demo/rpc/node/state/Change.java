@@ -0,0 +1,68 @@
+package org.jgroups.demo.rpc.node.state;
+
+import org.jgroups.Address;
+
+/**
+ * A single change of the shared state, the unit of a RAFT log command.
+ * ADD and REMOVE change the payload set, the other operations record the leader's placement
+ * so a new leader can resume it
+ *
+ * @param op      Operation
+ * @param payload P, null for CLEAR_OWNERS
+ * @param node    Target of PLAN and UNPLAN, owner of ASSIGN and UNASSIGN, otherwise null
+ */
+public record Change<P>(Op op, P payload, Address node) {
+
+    public enum Op {
+        ADD,
+        REMOVE,
+        /**
+         * Payload is about to start on the node
+         */
+        PLAN,
+        /**
+         * Node acknowledged the start
+         */
+        ASSIGN,
+        /**
+         * Node acknowledged the stop
+         */
+        UNASSIGN,
+        /**
+         * All nodes acknowledged a stop of everything, drops owners and plans
+         */
+        CLEAR_OWNERS,
+        /**
+         * Payload does not start on the node after all, drops the plan if it is still that node
+         */
+        UNPLAN
+    }
+
+    public static <P> Change<P> add(P payload) {
+        return new Change<>(Op.ADD, payload, null);
+    }
+
+    public static <P> Change<P> remove(P payload) {
+        return new Change<>(Op.REMOVE, payload, null);
+    }
+
+    public static <P> Change<P> plan(P payload, Address node) {
+        return new Change<>(Op.PLAN, payload, node);
+    }
+
+    public static <P> Change<P> assign(P payload, Address node) {
+        return new Change<>(Op.ASSIGN, payload, node);
+    }
+
+    public static <P> Change<P> unassign(P payload, Address node) {
+        return new Change<>(Op.UNASSIGN, payload, node);
+    }
+
+    public static <P> Change<P> unplan(P payload, Address node) {
+        return new Change<>(Op.UNPLAN, payload, node);
+    }
+
+    public static <P> Change<P> clearOwners() {
+        return new Change<>(Op.CLEAR_OWNERS, null, null);
+    }
+}
@@ -0,0 +1,123 @@
+package org.jgroups.demo.rpc.node.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.raft.Settable;
+import org.jgroups.util.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Coalesces changes of concurrent callers into one RAFT log entry.
+ * One replication round is in flight at a time, everything submitted meanwhile goes into the next round
+ * @param <P>
+ */
+@Slf4j
+public class GroupCommit<P> implements Closeable {
+
+    private final Settable settable;
+    private final PayloadStateMachine<P> stateMachine;
+    private final int timeout;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Pending<P>> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param settable     RaftHandle
+     * @param stateMachine Encodes the log entries
+     * @param timeout      Replication timeout of one round
+     * @param maxBatchSize Max changes in one log entry
+     */
+    public GroupCommit(Settable settable, PayloadStateMachine<P> stateMachine, int timeout, int maxBatchSize) {
+        this.settable = settable;
+        this.stateMachine = stateMachine;
+        this.timeout = timeout;
+        this.maxBatchSize = maxBatchSize;
+
+        flusher = new DefaultThreadFactory("group-commit-", true)
+                .newThread(this::flushLoop);
+        flusher.start();
+    }
+
+    /**
+     * @return Completes when the changes are committed
+     */
+    public CompletableFuture<Void> submit(List<Change<P>> changes) {
+        var pending = new Pending<>(changes, new CompletableFuture<>());
+        if (changes.isEmpty()) {
+            pending.future().complete(null);
+            return pending.future();
+        }
+        queue.add(pending);
+        if (closed) {
+            cancelQueued();
+        }
+        return pending.future();
+    }
+
+    private void flushLoop() {
+        List<Pending<P>> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                int size = batch.get(0).changes().size();
+                Pending<P> next;
+                while (size < maxBatchSize && (next = queue.poll()) != null) {
+                    batch.add(next);
+                    size += next.changes().size();
+                }
+                flush(batch, size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+        cancelQueued();
+    }
+
+    private void cancelQueued() {
+        Pending<P> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().cancel(false);
+        }
+    }
+
+    private void flush(List<Pending<P>> batch, int size) {
+        try {
+            List<Change<P>> changes = new ArrayList<>(size);
+            batch.forEach(pending -> changes.addAll(pending.changes()));
+
+            var command = stateMachine.command(changes);
+            settable.set(command.getArray(), command.getOffset(), command.getLength(), timeout, MILLISECONDS);
+            log.debug("Committed {} changes of {} callers", size, batch.size());
+
+            batch.forEach(pending -> pending.future().complete(null));
+        } catch (InterruptedException e) {
+            // Closed during the commit, the flush loop ends
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+        // Callers must not wait for the flusher, it may still be inside a commit
+        cancelQueued();
+    }
+
+    private record Pending<P>(List<Change<P>> changes, CompletableFuture<Void> future) {
+    }
+}
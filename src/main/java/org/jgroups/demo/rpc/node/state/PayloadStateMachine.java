@@ -0,0 +1,273 @@
+package org.jgroups.demo.rpc.node.state;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.codec.ChunkedPayloadStream;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.demo.metrics.NodeMetrics;
+import org.jgroups.demo.rpc.node.routing.RoutingTable;
+import org.jgroups.demo.store.PayloadStore;
+import org.jgroups.raft.StateMachine;
+import org.jgroups.util.ByteArray;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shared payload state replicated through the RAFT log.
+ * Every log entry is a list of {@link Change}s, snapshots hold the whole payload set
+ * followed by the owners and targets of the leader's placement and the routing table version.
+ * Snapshots are streamed in chunks, a received one is staged and swapped in at once.
+ * Only the RAFT thread mutates the store, readers never block it
+ * @param <P>
+ */
+@Slf4j
+public class PayloadStateMachine<P> implements StateMachine {
+
+    private final PayloadCodec<P> codec;
+
+    /**
+     * Snapshot format, set before the channel connects
+     */
+    @Setter
+    private ChunkedPayloadStream<P> stateTransfer;
+
+    @Setter
+    private NodeMetrics metrics = new NodeMetrics();
+
+    /**
+     * Shared state, on the leader also the node running each payload
+     */
+    @Getter
+    private final PayloadStore<P> store = new PayloadStore<>();
+    /**
+     * Committed owners, unlike the store not ahead on the leader
+     */
+    @Getter
+    private final RoutingTable<P> routingTable = new RoutingTable<>();
+    private final List<StateChangeListener<P>> listeners = new CopyOnWriteArrayList<>();
+
+    public PayloadStateMachine(PayloadCodec<P> codec) {
+        this.codec = codec;
+        this.stateTransfer = new ChunkedPayloadStream<>(codec);
+    }
+
+    public void addListener(StateChangeListener<P> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return Immutable snapshot of the shared state
+     */
+    public List<P> getPayloads() {
+        return store.snapshot();
+    }
+
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    /**
+     * @return RAFT log command with the changes
+     */
+    public ByteArray command(List<Change<P>> changes) throws IOException {
+        int size = Integer.BYTES;
+        for (Change<P> change : changes) {
+            size += 1;
+            if (change.payload() != null) {
+                size += codec.estimatedSize(change.payload());
+            }
+            if (change.node() != null) {
+                size += Util.size(change.node());
+            }
+        }
+        var out = new ByteArrayDataOutputStream(size);
+        out.writeInt(changes.size());
+        for (Change<P> change : changes) {
+            out.writeByte(change.op().ordinal());
+            switch (change.op()) {
+                case ADD, REMOVE -> codec.write(change.payload(), out);
+                case PLAN, ASSIGN, UNASSIGN, UNPLAN -> {
+                    codec.write(change.payload(), out);
+                    Util.writeAddress(change.node(), out);
+                }
+                case CLEAR_OWNERS -> {
+                }
+            }
+        }
+        return out.getBuffer();
+    }
+
+    @Override
+    public byte[] apply(byte[] data, int offset, int length, boolean serializeResponse) throws Exception {
+        var in = new ByteArrayDataInputStream(data, offset, length);
+        int count = in.readInt();
+
+        List<P> added = new ArrayList<>();
+        List<P> removed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var op = Change.Op.values()[in.readByte()];
+            switch (op) {
+                case ADD -> {
+                    P p = codec.read(in);
+                    if (store.add(p)) {
+                        added.add(p);
+                    }
+                }
+                case REMOVE -> {
+                    P p = codec.read(in);
+                    if (store.remove(p)) {
+                        removed.add(p);
+                    }
+                    routingTable.remove(p);
+                }
+                case PLAN -> store.setTarget(codec.read(in), Util.readAddress(in));
+                case ASSIGN -> {
+                    P p = codec.read(in);
+                    Address node = Util.readAddress(in);
+                    store.setOwner(p, node);
+                    store.clearTarget(p, node);
+                    if (store.contains(p)) {
+                        routingTable.assign(p, node);
+                    }
+                }
+                case UNASSIGN -> {
+                    P p = codec.read(in);
+                    Address node = Util.readAddress(in);
+                    store.clearOwner(p, node);
+                    routingTable.unassign(p, node);
+                }
+                case UNPLAN -> store.clearTarget(codec.read(in), Util.readAddress(in));
+                case CLEAR_OWNERS -> {
+                    store.clearOwners();
+                    store.clearTargets();
+                    routingTable.clear();
+                }
+            }
+        }
+        routingTable.publish();
+        notifyListeners(added, removed);
+        return null;
+    }
+
+    /**
+     * Streams the current snapshot
+     */
+    @Override
+    public void writeContentTo(DataOutput out) throws Exception {
+        long start = System.nanoTime();
+        var payloads = getPayloads();
+        long bytes = stateTransfer.write(payloads, out);
+        bytes += writeAssignments(payloads, out);
+        out.writeLong(routingTable.getVersion());
+        bytes += Long.BYTES;
+        metrics.getStateBytesWritten().add(bytes);
+        metrics.getStateWriteTime().recordSince(start);
+    }
+
+    /**
+     * Chunks go into a staging set, the whole snapshot is published with one swap
+     */
+    @Override
+    public void readContentFrom(DataInput in) throws Exception {
+        long start = System.nanoTime();
+        Set<P> staging = new LinkedHashSet<>();
+        metrics.getStateBytesRead().add(stateTransfer.read(in, staging::addAll));
+        Set<P> previous = new HashSet<>(store.replaceAll(staging));
+        readAssignments(in);
+        readRoutingTable(in);
+
+        // apply runs on the same RAFT thread, neither set changes here
+        List<P> added = new ArrayList<>();
+        List<P> removed = new ArrayList<>();
+        for (P p : previous) {
+            if (!staging.contains(p)) {
+                removed.add(p);
+            }
+        }
+        for (P p : staging) {
+            if (!previous.contains(p)) {
+                added.add(p);
+            }
+        }
+        metrics.getStateReadTime().recordSince(start);
+        log.info("Snapshot applied, {} payloads", staging.size());
+        notifyListeners(added, removed);
+    }
+
+    /**
+     * Payloads with an owner or a target: int count, { payload, owner, target }*.
+     * Owners come from the routing table, the leader's store may be ahead of the log
+     *
+     * @return Bytes written
+     */
+    private long writeAssignments(List<P> payloads, DataOutput out) throws IOException {
+        List<P> assigned = new ArrayList<>();
+        for (P p : payloads) {
+            if (routingTable.ownerOf(p) != null || store.getTarget(p) != null) {
+                assigned.add(p);
+            }
+        }
+        var buffer = new ByteArrayDataOutputStream(Integer.BYTES + assigned.size() * 64);
+        buffer.writeInt(assigned.size());
+        for (P p : assigned) {
+            codec.write(p, buffer);
+            Util.writeAddress(routingTable.ownerOf(p), buffer);
+            Util.writeAddress(store.getTarget(p), buffer);
+        }
+        out.write(buffer.buffer(), 0, buffer.position());
+        return buffer.position();
+    }
+
+    /**
+     * The snapshot's owners and targets replace the local ones
+     */
+    private void readAssignments(DataInput in) throws IOException, ClassNotFoundException {
+        store.clearOwners();
+        store.clearTargets();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            P p = codec.read(in);
+            store.setOwner(p, Util.readAddress(in));
+            store.setTarget(p, Util.readAddress(in));
+        }
+    }
+
+    /**
+     * Routes are the snapshot's owners, only the version follows them
+     */
+    private void readRoutingTable(DataInput in) throws IOException {
+        long version = in.readLong();
+        Map<P, Address> routes = new HashMap<>();
+        for (P p : store.snapshot()) {
+            Address owner = store.getOwner(p);
+            if (owner != null) {
+                routes.put(p, owner);
+            }
+        }
+        routingTable.reset(version, routes);
+    }
+
+    private void notifyListeners(List<P> added, List<P> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        for (StateChangeListener<P> listener : listeners) {
+            listener.onChange(added, removed);
+        }
+    }
+}
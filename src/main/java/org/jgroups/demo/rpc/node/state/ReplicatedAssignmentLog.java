@@ -0,0 +1,68 @@
+package org.jgroups.demo.rpc.node.state;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.rpc.node.rpc.AssignmentLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Placement recorded in the RAFT log next to the payloads, through the group commit.
+ * Plans are committed before the starts, acknowledgements are committed in the background
+ * @param <P>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ReplicatedAssignmentLog<P> implements AssignmentLog<P> {
+
+    private final GroupCommit<P> groupCommit;
+    private final int timeout;
+
+    @Override
+    public void planned(Map<Address, List<P>> assignment) throws Exception {
+        List<Change<P>> changes = new ArrayList<>();
+        assignment.forEach((node, payloads) -> payloads.forEach(p -> changes.add(Change.plan(p, node))));
+        groupCommit.submit(changes)
+                .get(timeout, MILLISECONDS);
+    }
+
+    @Override
+    public void unplanned(Address node, List<P> payloads) {
+        List<Change<P>> changes = new ArrayList<>(payloads.size());
+        payloads.forEach(p -> changes.add(Change.unplan(p, node)));
+        submit(changes);
+    }
+
+    @Override
+    public void started(Address node, List<P> payloads) {
+        List<Change<P>> changes = new ArrayList<>(payloads.size());
+        payloads.forEach(p -> changes.add(Change.assign(p, node)));
+        submit(changes);
+    }
+
+    @Override
+    public void stopped(Address node, List<P> payloads) {
+        List<Change<P>> changes = new ArrayList<>(payloads.size());
+        payloads.forEach(p -> changes.add(Change.unassign(p, node)));
+        submit(changes);
+    }
+
+    @Override
+    public void stoppedAll() {
+        submit(List.of(Change.clearOwners()));
+    }
+
+    private void submit(List<Change<P>> changes) {
+        groupCommit.submit(changes)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.warn("Assignment not recorded: {}", e.toString());
+                    }
+                });
+    }
+}
@@ -0,0 +1,15 @@
+package org.jgroups.demo.rpc.node.state;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface StateChangeListener<P> {
+
+    /**
+     * Called after a command or a snapshot was applied
+     *
+     * @param added   Payloads added to the shared state
+     * @param removed Payloads removed from the shared state
+     */
+    void onChange(List<P> added, List<P> removed);
+}
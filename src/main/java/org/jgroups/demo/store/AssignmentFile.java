@@ -0,0 +1,205 @@
+package org.jgroups.demo.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jgroups.Address;
+import org.jgroups.demo.codec.PayloadCodec;
+import org.jgroups.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Payloads running on this node in an append-only file, so a restarted node knows what it ran.
+ * Records: op byte, epoch long, then the node's address (NODE) or the payloads encoded by the codec (START, STOP).
+ * Every record is flushed, a torn last record is ignored on read.
+ * Once it holds more records than {@code compactAfter} the file is rewritten as one NODE and one START record
+ * @param <P>
+ */
+@Slf4j
+public class AssignmentFile<P> implements Closeable {
+
+    public static final int DEFAULT_COMPACT_AFTER = 1000;
+
+    private enum Op {
+        NODE, START, STOP;
+
+        private static final Op[] VALUES = values();
+    }
+
+    /**
+     * What a previous run left
+     *
+     * @param node     Address of the node in that run, null if it never started a payload
+     * @param epoch    Newest leader epoch recorded
+     * @param payloads Payloads running at the end
+     */
+    public record Contents<P>(Address node, long epoch, List<P> payloads) {
+    }
+
+    private final Path path;
+    private final PayloadCodec<P> codec;
+    private final Supplier<Address> node;
+    private final int compactAfter;
+
+    private final Set<P> running = new LinkedHashSet<>();
+    private DataOutputStream out;
+    private boolean nodeWritten;
+    private int records;
+    private long epoch;
+
+    /**
+     * @param node Address of this node, known once the channel is connected
+     */
+    public AssignmentFile(Path path, PayloadCodec<P> codec, Supplier<Address> node) {
+        this(path, codec, node, DEFAULT_COMPACT_AFTER);
+    }
+
+    /**
+     * @param compactAfter Records before the file is rewritten
+     */
+    public AssignmentFile(Path path, PayloadCodec<P> codec, Supplier<Address> node, int compactAfter) {
+        this.path = path;
+        this.codec = codec;
+        this.node = node;
+        this.compactAfter = compactAfter;
+    }
+
+    /**
+     * @return Contents of the file, empty if there is none
+     */
+    public static <P> Contents<P> read(Path path, PayloadCodec<P> codec) throws IOException {
+        Address node = null;
+        long epoch = 0;
+        Set<P> running = new LinkedHashSet<>();
+        try (InputStream input = Files.newInputStream(path)) {
+            var in = new DataInputStream(new BufferedInputStream(input));
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                epoch = Math.max(epoch, in.readLong());
+                switch (Op.VALUES[op]) {
+                    case NODE -> node = Util.readAddress(in);
+                    case START -> running.addAll(codec.readAll(in));
+                    case STOP -> codec.readAll(in).forEach(running::remove);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return new Contents<>(null, 0, List.of());
+        } catch (EOFException | ClassNotFoundException | ArrayIndexOutOfBoundsException e) {
+            log.warn("Assignment file {} ends with a torn record: {}", path, e.toString());
+        }
+        return new Contents<>(node, epoch, new ArrayList<>(running));
+    }
+
+    /**
+     * Starts a new file, the previous one must have been read before
+     */
+    public synchronized void create() throws IOException {
+        rewrite();
+    }
+
+    public synchronized void started(Collection<P> payloads, long epoch) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        running.addAll(payloads);
+        append(Op.START, payloads, epoch);
+    }
+
+    public synchronized void stopped(Collection<P> payloads, long epoch) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        payloads.forEach(running::remove);
+        append(Op.STOP, payloads, epoch);
+    }
+
+    private void append(Op op, Collection<P> payloads, long epoch) {
+        if (out == null) {
+            return;
+        }
+        this.epoch = Math.max(this.epoch, epoch);
+        try {
+            if (records >= compactAfter) {
+                rewrite();
+                return;
+            }
+            writeNode();
+            out.writeByte(op.ordinal());
+            out.writeLong(epoch);
+            codec.writeAll(payloads, out);
+            out.flush();
+            records++;
+        } catch (IOException e) {
+            log.error("Assignment file {} not written: {}", path, e.toString());
+        }
+    }
+
+    /**
+     * Writes the running payloads to a new file and moves it over the old one
+     */
+    private void rewrite() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var rewritten = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            if (node.get() != null) {
+                rewritten.writeByte(Op.NODE.ordinal());
+                rewritten.writeLong(epoch);
+                Util.writeAddress(node.get(), rewritten);
+            }
+            rewritten.writeByte(Op.START.ordinal());
+            rewritten.writeLong(epoch);
+            codec.writeAll(running, rewritten);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        nodeWritten = node.get() != null;
+        records = 0;
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND)));
+    }
+
+    private void writeNode() throws IOException {
+        if (nodeWritten || node.get() == null) {
+            return;
+        }
+        out.writeByte(Op.NODE.ordinal());
+        out.writeLong(epoch);
+        Util.writeAddress(node.get(), out);
+        nodeWritten = true;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } catch (IOException e) {
+            log.warn("Assignment file {} not closed: {}", path, e.toString());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.jgroups.demo.store;
+
+import org.jgroups.Address;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Payload set with O(1) keyed lookup, the node that owns each payload and the node it is planned to move to.
+ * Mutations go to a ConcurrentHashMap, readers get an immutable snapshot
+ * that is copied once per change, not once per read.
+ * Payloads must implement equals and hashCode
+ * @param <P>
+ */
+public class PayloadStore<P> {
+
+    private volatile ConcurrentHashMap<P, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot<P> snapshot = new Snapshot<>(0, List.of());
+
+    /**
+     * @return true if the payload was not in the store
+     */
+    public boolean add(P payload) {
+        boolean added = entries.putIfAbsent(payload, new Entry()) == null;
+        if (added) {
+            version.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * @return Payloads that were not in the store
+     */
+    public List<P> addAll(Collection<P> payloads) {
+        List<P> added = new ArrayList<>();
+        for (P p : payloads) {
+            if (add(p)) {
+                added.add(p);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return true if the payload was in the store
+     */
+    public boolean remove(P payload) {
+        boolean removed = entries.remove(payload) != null;
+        if (removed) {
+            version.incrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * @return Payloads that were in the store
+     */
+    public List<P> removeAll(Collection<P> payloads) {
+        List<P> removed = new ArrayList<>();
+        for (P p : payloads) {
+            if (remove(p)) {
+                removed.add(p);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Publishes new contents with one swap, concurrent readers see either the old or the new set.
+     * Payloads that stay keep their owner and target. Changes made concurrently with the swap may be lost,
+     * meant for the single writer that installs a snapshot
+     *
+     * @return Previous contents
+     */
+    public List<P> replaceAll(Collection<P> payloads) {
+        var previous = entries;
+        var replacement = new ConcurrentHashMap<P, Entry>(Math.max(16, payloads.size() * 4 / 3 + 1));
+        for (P p : payloads) {
+            Entry entry = new Entry();
+            Entry kept = previous.get(p);
+            if (kept != null) {
+                entry.owner = kept.owner;
+                entry.target = kept.target;
+            }
+            replacement.putIfAbsent(p, entry);
+        }
+        entries = replacement;
+        version.incrementAndGet();
+        return new ArrayList<>(previous.keySet());
+    }
+
+    /**
+     * @return Previous contents
+     */
+    public List<P> clear() {
+        return replaceAll(List.of());
+    }
+
+    public boolean contains(P payload) {
+        return entries.containsKey(payload);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return Immutable copy of all payloads, shared by readers until the next change
+     */
+    public List<P> snapshot() {
+        var current = snapshot;
+        long v = version.get();
+        if (current.version() == v) {
+            return current.payloads();
+        }
+        var payloads = List.copyOf(entries.keySet());
+        snapshot = new Snapshot<>(v, payloads);
+        return payloads;
+    }
+
+    /**
+     * @return Node running the payload, null if unknown or not in the store
+     */
+    public Address getOwner(P payload) {
+        Entry entry = entries.get(payload);
+        return entry != null ? entry.owner : null;
+    }
+
+    /**
+     * Ignored for payloads that are not in the store
+     */
+    public void setOwner(P payload, Address owner) {
+        Entry entry = entries.get(payload);
+        if (entry != null) {
+            entry.owner = owner;
+        }
+    }
+
+    /**
+     * Clears the owner only if it is still the given node
+     */
+    public void clearOwner(P payload, Address owner) {
+        Entry entry = entries.get(payload);
+        if (entry != null && owner.equals(entry.owner)) {
+            entry.owner = null;
+        }
+    }
+
+    public void clearOwners() {
+        entries.values()
+                .forEach(entry -> entry.owner = null);
+    }
+
+    /**
+     * @return Node the payload is planned to start on, null if no move is pending
+     */
+    public Address getTarget(P payload) {
+        Entry entry = entries.get(payload);
+        return entry != null ? entry.target : null;
+    }
+
+    /**
+     * Ignored for payloads that are not in the store
+     */
+    public void setTarget(P payload, Address target) {
+        Entry entry = entries.get(payload);
+        if (entry != null) {
+            entry.target = target;
+        }
+    }
+
+    /**
+     * Clears the target only if it is still the given node
+     */
+    public void clearTarget(P payload, Address target) {
+        Entry entry = entries.get(payload);
+        if (entry != null && target.equals(entry.target)) {
+            entry.target = null;
+        }
+    }
+
+    public void clearTargets() {
+        entries.values()
+                .forEach(entry -> entry.target = null);
+    }
+
+    /**
+     * @return true if any payload has an owner or a target
+     */
+    public boolean hasAssignments() {
+        for (Entry entry : entries.values()) {
+            if (entry.owner != null || entry.target != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Payloads owned by the node, O(n)
+     */
+    public List<P> getOwnedBy(Address owner) {
+        List<P> owned = new ArrayList<>();
+        entries.forEach((p, entry) -> {
+            if (owner.equals(entry.owner)) {
+                owned.add(p);
+            }
+        });
+        return owned;
+    }
+
+    /**
+     * @return Payload count per owner, payloads without owner under null
+     */
+    public Map<Address, Integer> countByOwner() {
+        Map<Address, Integer> counts = new HashMap<>();
+        entries.values()
+                .forEach(entry -> counts.merge(entry.owner, 1, Integer::sum));
+        return counts;
+    }
+
+    private static final class Entry {
+        volatile Address owner;
+        volatile Address target;
+    }
+
+    private record Snapshot<P>(long version, List<P> payloads) {
+    }
+}
@@ -0,0 +1,94 @@
+package org.jgroups.demo.store;
+
+import org.jgroups.Address;
+import org.jgroups.demo.codec.ObjectCodec;
+import org.jgroups.util.Util;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssignmentFileTest {
+
+    private final ObjectCodec<Long> codec = new ObjectCodec<>();
+    private final Address node = Util.createRandomAddress("A");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsNothingWithoutFile() throws Exception {
+        var contents = AssignmentFile.read(dir.resolve("missing"), codec);
+
+        assertNull(contents.node());
+        assertEquals(0, contents.epoch());
+        assertTrue(contents.payloads().isEmpty());
+    }
+
+    @Test
+    void replaysStartsAndStops() throws Exception {
+        Path path = dir.resolve("assignment");
+        try (var file = new AssignmentFile<>(path, codec, () -> node)) {
+            file.create();
+            file.started(List.of(1L, 2L, 3L), 1);
+            file.stopped(List.of(2L), 2);
+            file.started(List.of(4L), 3);
+            file.stopped(List.of(1L, 5L), 3);
+        }
+
+        var contents = AssignmentFile.read(path, codec);
+
+        assertEquals(node, contents.node());
+        assertEquals(3, contents.epoch());
+        assertEquals(List.of(3L, 4L), contents.payloads());
+    }
+
+    @Test
+    void compactsAfterRecords() throws Exception {
+        Path path = dir.resolve("assignment");
+        try (var file = new AssignmentFile<>(path, codec, () -> node, 2)) {
+            file.create();
+            file.started(List.of(1L, 2L), 1);
+            file.started(List.of(3L), 1);
+            long full = Files.size(path);
+            // Third record rewrites the file as one NODE and one START record
+            file.stopped(List.of(1L, 2L), 2);
+            assertTrue(Files.size(path) < full, "file not compacted");
+            file.started(List.of(4L), 2);
+        }
+
+        var contents = AssignmentFile.read(path, codec);
+
+        assertEquals(node, contents.node());
+        assertEquals(2, contents.epoch());
+        assertEquals(List.of(3L, 4L), contents.payloads());
+        assertTrue(Files.notExists(path.resolveSibling("assignment.tmp")));
+    }
+
+    @Test
+    void ignoresTornLastRecord() throws Exception {
+        Path path = dir.resolve("assignment");
+        long intact;
+        try (var file = new AssignmentFile<>(path, codec, () -> node)) {
+            file.create();
+            file.started(List.of(1L, 2L), 1);
+            intact = Files.size(path);
+            file.started(List.of(3L, 4L, 5L), 2);
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        // Cut the last record in the middle of its payloads
+        Files.write(path, Arrays.copyOf(bytes, (int) (intact + (bytes.length - intact) / 2)));
+
+        var contents = AssignmentFile.read(path, codec);
+
+        assertEquals(node, contents.node());
+        assertEquals(List.of(1L, 2L), contents.payloads());
+    }
+}